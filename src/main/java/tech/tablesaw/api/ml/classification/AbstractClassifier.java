@@ -16,18 +16,47 @@ package tech.tablesaw.api.ml.classification;
 
 import tech.tablesaw.api.NumberColumn;
 
+import java.util.stream.IntStream;
+
 public abstract class AbstractClassifier {
 
+    /**
+     * The number of rows scored by a single task when a matrix is populated in parallel
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    /**
+     * Receives one prediction and the actual class of its row
+     */
+    private interface Counter {
+        void increment(int predicted, int actual);
+    }
+
     abstract int predictFromModel(double[] data);
 
-    void populateMatrix(int[] labels, ConfusionMatrix confusion, NumberColumn[] predictors) {
+    /**
+     * Scores every row and counts the results in the confusion matrix. Blocks of rows are scored in parallel,
+     * each into counts that only grow to the classes the block predicts, and the counts are merged at the end.
+     */
+    void populateMatrix(int[] labels, AbstractConfusionMatrix confusion, NumberColumn[] predictors) {
+        int rows = predictors[0].size();
+        int blocks = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ConfusionCounts counted = IntStream.range(0, blocks).parallel().collect(
+                () -> new ConfusionCounts(0),
+                (counts, block) -> populateMatrix(labels, counts::increment, predictors,
+                        block * BLOCK_SIZE, Math.min(rows, (block + 1) * BLOCK_SIZE)),
+                ConfusionCounts::merge);
+        confusion.counts.merge(counted);
+    }
+
+    private void populateMatrix(int[] labels, Counter counter, NumberColumn[] predictors, int from, int to) {
         double[] data = new double[predictors.length];
-        for (int row = 0; row < predictors[0].size(); row++) {
+        for (int row = from; row < to; row++) {
             for (int col = 0; col < predictors.length; col++) {
                 data[col] = predictors[col].get(row);
             }
             int prediction = predictFromModel(data);
-            confusion.increment(prediction, labels[row]);
+            counter.increment(prediction, labels[row]);
         }
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import com.google.common.base.Preconditions;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+/**
+ * A confusion matrix backed by primitive counts indexed by class code. Subclasses decide how a code is labeled
+ * and the order in which the classes are shown.
+ */
+public abstract class AbstractConfusionMatrix implements MergeableConfusionMatrix {
+
+    final int classCount;
+    final ConfusionCounts counts;
+
+    AbstractConfusionMatrix(int classCount) {
+        this.classCount = classCount;
+        this.counts = new ConfusionCounts(classCount);
+    }
+
+    @Override
+    public abstract AbstractConfusionMatrix emptyCopy();
+
+    /**
+     * Returns the label shown for the class with the given code, or the code itself if the class has no label
+     */
+    abstract String label(int code);
+
+    /**
+     * Returns the positions of the given ascending class codes in the order the classes are shown. By default the
+     * classes are shown in the order of their codes.
+     */
+    int[] order(int[] codes) {
+        int[] order = new int[codes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    @Override
+    public void increment(Integer predicted, Integer actual) {
+        counts.increment(predicted, actual);
+    }
+
+    /**
+     * Counts one prediction, without boxing the class codes
+     */
+    public void increment(int predicted, int actual) {
+        counts.increment(predicted, actual);
+    }
+
+    /**
+     * Adds the counts of another matrix to this one. Merging is not synchronized with increment(), so each thread
+     * should fill its own matrix, from emptyCopy() or a {@link ConcurrentConfusionMatrix}, and the results merged
+     * once the threads are done.
+     *
+     * @throws IllegalArgumentException if {@code other} is this matrix, or is not one of the matrices in this
+     *                                  package
+     */
+    @Override
+    public AbstractConfusionMatrix merge(MergeableConfusionMatrix other) {
+        Preconditions.checkArgument(other != this, "A confusion matrix cannot be merged into itself");
+        if (other instanceof AbstractConfusionMatrix) {
+            counts.merge(((AbstractConfusionMatrix) other).counts);
+        } else if (other instanceof ConcurrentConfusionMatrix) {
+            ((ConcurrentConfusionMatrix) other).mergeInto(counts);
+        } else {
+            throw new IllegalArgumentException("Cannot merge a " + other.getClass().getSimpleName());
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return toTable().toString();
+    }
+
+    @Override
+    public Table toTable() {
+        Table t = Table.create("Confusion Matrix");
+        t.addColumns(StringColumn.create(""));
+
+        int[] ascending = counts.codes();
+        int[] order = order(ascending);
+        int[] codes = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            codes[i] = ascending[order[i]];
+        }
+        for (int code : codes) {
+            t.addColumns(DoubleColumn.create("Actual " + label(code)));
+            t.column(0).appendCell("Predicted " + label(code));
+        }
+        for (int predicted : codes) {
+            for (int c = 0; c < codes.length; c++) {
+                t.numberColumn(c + 1).append(counts.get(predicted, codes[c]));
+            }
+        }
+        t.column(0).setName("n = " + counts.total());
+        return t;
+    }
+
+    @Override
+    public double accuracy() {
+        return counts.correct() / (counts.total() * 1.0);
+    }
+
+    @Override
+    public Table metrics() {
+        ConfusionCounts.Marginals marginals = counts.marginals();
+        return new ClassificationMetrics(marginals, order(marginals.codes), this::label).classTable();
+    }
+
+    @Override
+    public Table summaryMetrics() {
+        ConfusionCounts.Marginals marginals = counts.marginals();
+        return new ClassificationMetrics(marginals, order(marginals.codes), this::label).summaryTable();
+    }
+}
@@ -14,123 +14,52 @@
 
 package tech.tablesaw.api.ml.classification;
 
-import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import tech.tablesaw.api.DoubleColumn;
-import tech.tablesaw.api.NumberColumn;
 import tech.tablesaw.api.StringColumn;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.SortedMap;
+import java.util.Comparator;
 import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 /**
  * A confusion matrix is used to measure the accuracy of a classifier by counting the number of correct and
  * incorrect values produced when testing the classifier such that the counts are made for every combination of
  * correct and incorrect classification
  */
-public class CategoryConfusionMatrix implements ConfusionMatrix {
+public class CategoryConfusionMatrix extends AbstractConfusionMatrix {
 
-    private final Table<Integer, Integer, Integer> table = TreeBasedTable.create();
-
-    private final SortedMap<Integer, String> labels = new TreeMap<>();
-    private final StringColumn labelColumn;
+    private final Int2ObjectMap<String> labelKeys;
 
     public CategoryConfusionMatrix(StringColumn labelColumn, SortedSet<String> labels) {
-        this.labelColumn = labelColumn;
-        int i = 0;
-        for (String object : labels) {
-            this.labels.put(i, object);
-            i++;
-        }
+        super(labels.size());
+        this.labelKeys = labelColumn.keyToValueMap();
     }
 
-    @Override
-    public void increment(Integer predicted, Integer actual) {
-        Integer v = table.get(predicted, actual);
-        if (v == null) {
-            table.put(predicted, actual, 1);
-        } else {
-            table.put(predicted, actual, v + 1);
-        }
+    private CategoryConfusionMatrix(Int2ObjectMap<String> labelKeys, int classCount) {
+        super(classCount);
+        this.labelKeys = labelKeys;
     }
 
     @Override
-    public String toString() {
-        return toTable().toString();
+    public CategoryConfusionMatrix emptyCopy() {
+        return new CategoryConfusionMatrix(labelKeys, classCount);
     }
 
     @Override
-    public tech.tablesaw.api.Table toTable() {
-
-        Table<String, String, Integer> sortedTable = sortedTable();
-
-        tech.tablesaw.api.Table t = tech.tablesaw.api.Table.create("Confusion Matrix");
-        t.addColumns(StringColumn.create(""));
-
-        for (String label : sortedTable.rowKeySet()) {
-            t.addColumns(DoubleColumn.create(label));
-            t.column(0).appendCell("Predicted " + label);
-        }
-
-        int n = 0;
-        for (String rowLabel : sortedTable.rowKeySet()) {
-            int c = 1;
-            for (String colLabel : sortedTable.columnKeySet()) {
-                Integer value = sortedTable.get(rowLabel, colLabel);
-                if (value == null) {
-                    t.numberColumn(c).append(0);
-                } else {
-                    t.numberColumn(c).append(value);
-                    n = n + value;
-                }
-                c++;
-            }
-        }
-        t.column(0).setName("n = " + n);
-        for (int col = 1; col <= sortedTable.columnKeySet().size(); col++) {
-            t.column(col).setName("Actual " + t.column(col).name());
-        }
-        return t;
-    }
-
-    private Table<String, String, Integer> sortedTable() {
-        Int2ObjectMap<String> labelKeys = labelColumn.keyToValueMap();
-        Table<String, String, Integer> sortedTable = TreeBasedTable.create();
-        // make a set of all the values needed, from the prediction set or the actual set
-        TreeSet<Integer> allValues = new TreeSet<>();
-        allValues.addAll(table.columnKeySet());
-        allValues.addAll(table.rowKeySet());
-        List<Comparable<?>> valuesList = new ArrayList<>(allValues);
-
-        for (int r = 0; r < valuesList.size(); r++) {
-            for (int c = 0; c < valuesList.size(); c++) {
-                Integer value = table.get(valuesList.get(r), valuesList.get(c));
-                if (value == null) {
-                    sortedTable.put(labelKeys.get(r), labelKeys.get(c), 0);
-                } else {
-                    sortedTable.put(labelKeys.get(r), labelKeys.get(c), value);
-                }
-            }
-        }
-        return sortedTable;
+    String label(int code) {
+        String label = labelKeys.get(code);
+        return label == null ? String.valueOf(code) : label;
     }
 
+    /**
+     * The classes are shown in the order of their labels, rather than their codes
+     */
     @Override
-    public double accuracy() {
-        int hits = 0;
-        int misses = 0;
-        for (Table.Cell<Integer, Integer, Integer> cell : table.cellSet()) {
-            if (cell.getRowKey().equals(cell.getColumnKey())) {
-                hits = hits + cell.getValue();
-            } else {
-                misses = misses + cell.getValue();
-            }
-        }
-        return hits / ((hits + misses) * 1.0);
+    int[] order(int[] codes) {
+        return IntStream.range(0, codes.length)
+                .boxed()
+                .sorted(Comparator.comparing(i -> label(codes[i])))
+                .mapToInt(Integer::intValue)
+                .toArray();
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.function.IntFunction;
+
+/**
+ * The classification metrics derived from the marginals of a confusion matrix.
+ *
+ * Every metric depends only on the diagonal and the row and column totals of the matrix, which are gathered in a
+ * single pass over the counts. A metric whose denominator is zero, such as the precision of a class that is never
+ * predicted, is reported as zero.
+ */
+final class ClassificationMetrics {
+
+    private final ConfusionCounts.Marginals marginals;
+    private final int[] order;
+    private final IntFunction<String> labels;
+
+    private final double[] precision;
+    private final double[] recall;
+    private final double[] f1;
+
+    ClassificationMetrics(ConfusionCounts.Marginals marginals, int[] order, IntFunction<String> labels) {
+        this.marginals = marginals;
+        this.order = order;
+        this.labels = labels;
+
+        int k = marginals.codes.length;
+        this.precision = new double[k];
+        this.recall = new double[k];
+        this.f1 = new double[k];
+        for (int i = 0; i < k; i++) {
+            long correct = marginals.correct[i];
+            precision[i] = ratio(correct, marginals.predicted[i]);
+            recall[i] = ratio(correct, marginals.actual[i]);
+            f1[i] = ratio(2 * correct, marginals.predicted[i] + marginals.actual[i]);
+        }
+    }
+
+    private static double ratio(double numerator, double denominator) {
+        return denominator == 0 ? 0 : numerator / denominator;
+    }
+
+    private long correct() {
+        long correct = 0;
+        for (long c : marginals.correct) {
+            correct += c;
+        }
+        return correct;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return ratio(sum, values.length);
+    }
+
+    double accuracy() {
+        return ratio(correct(), marginals.total);
+    }
+
+    /**
+     * Returns Cohen's kappa, the agreement between the predicted and actual classes beyond that expected by
+     * chance
+     */
+    double kappa() {
+        double n = marginals.total;
+        double expected = 0;
+        for (int i = 0; i < marginals.codes.length; i++) {
+            expected += (marginals.predicted[i] / n) * (marginals.actual[i] / n);
+        }
+        return ratio(accuracy() - expected, 1 - expected);
+    }
+
+    /**
+     * Returns the Matthews correlation coefficient, generalized to many classes (Gorodkin's R_K statistic)
+     */
+    double matthewsCorrelation() {
+        double n = marginals.total;
+        double sumPredictedActual = 0;
+        double sumPredictedSquared = 0;
+        double sumActualSquared = 0;
+        for (int i = 0; i < marginals.codes.length; i++) {
+            double p = marginals.predicted[i];
+            double a = marginals.actual[i];
+            sumPredictedActual += p * a;
+            sumPredictedSquared += p * p;
+            sumActualSquared += a * a;
+        }
+        double numerator = correct() * n - sumPredictedActual;
+        double denominator = Math.sqrt(n * n - sumPredictedSquared) * Math.sqrt(n * n - sumActualSquared);
+        return ratio(numerator, denominator);
+    }
+
+    /**
+     * Returns a table with a row for each class and the macro and micro averages
+     */
+    Table classTable() {
+        Table table = Table.create("Classification Metrics");
+        StringColumn classColumn = StringColumn.create("Class");
+        NumberColumn precisionColumn = DoubleColumn.create("Precision");
+        NumberColumn recallColumn = DoubleColumn.create("Recall");
+        NumberColumn f1Column = DoubleColumn.create("F1");
+        NumberColumn supportColumn = DoubleColumn.create("Support");
+        table.addColumns(classColumn, precisionColumn, recallColumn, f1Column, supportColumn);
+
+        for (int i : order) {
+            classColumn.appendCell(labels.apply(marginals.codes[i]));
+            precisionColumn.append(precision[i]);
+            recallColumn.append(recall[i]);
+            f1Column.append(f1[i]);
+            supportColumn.append(marginals.actual[i]);
+        }
+
+        classColumn.appendCell("Macro average");
+        precisionColumn.append(mean(precision));
+        recallColumn.append(mean(recall));
+        f1Column.append(mean(f1));
+        supportColumn.append(marginals.total);
+
+        // with one class per row, every misclassification is both a false positive and a false negative, so the
+        // pooled precision, recall and F1 all equal the accuracy
+        classColumn.appendCell("Micro average");
+        precisionColumn.append(accuracy());
+        recallColumn.append(accuracy());
+        f1Column.append(accuracy());
+        supportColumn.append(marginals.total);
+        return table;
+    }
+
+    /**
+     * Returns a table of the overall metrics, by name
+     */
+    Table summaryTable() {
+        Table table = Table.create("Classification Summary");
+        StringColumn metric = StringColumn.create("Metric");
+        NumberColumn value = DoubleColumn.create("Value");
+        table.addColumns(metric, value);
+
+        metric.appendCell("n");
+        value.append(marginals.total);
+        metric.appendCell("Accuracy");
+        value.append(accuracy());
+        metric.appendCell("Cohen's kappa");
+        value.append(kappa());
+        metric.appendCell("Matthews correlation");
+        value.append(matthewsCorrelation());
+        metric.appendCell("Macro precision");
+        value.append(mean(precision));
+        metric.appendCell("Macro recall");
+        value.append(mean(recall));
+        metric.appendCell("Macro F1");
+        value.append(mean(f1));
+        metric.appendCell("Micro precision");
+        value.append(accuracy());
+        metric.appendCell("Micro recall");
+        value.append(accuracy());
+        metric.appendCell("Micro F1");
+        value.append(accuracy());
+        return table;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import com.google.common.base.Preconditions;
+import tech.tablesaw.api.Table;
+
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A confusion matrix that many threads can increment at once without locking.
+ *
+ * Each thread counts into its own private set of counts, created the first time it increments the matrix. The
+ * per-thread counts are only combined when the matrix is read, so reads are exact once the threads that filled
+ * it have finished (e.g. after a parallel stream completes, or the threads are joined).
+ *
+ * Only the matrix holds the counts strongly. A thread holds a weak reference to its counts, so when the matrix is
+ * dropped its counts are freed, even though pool threads that filled it live on.
+ */
+public class ConcurrentConfusionMatrix implements MergeableConfusionMatrix {
+
+    private final AbstractConfusionMatrix template;
+    private final Queue<ConfusionCounts> shards = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<WeakReference<ConfusionCounts>> local;
+
+    /**
+     * Creates an empty concurrent matrix over the same classes as the given one
+     */
+    public ConcurrentConfusionMatrix(AbstractConfusionMatrix classes) {
+        this.template = classes.emptyCopy();
+        this.local = ThreadLocal.withInitial(() -> {
+            ConfusionCounts counts = new ConfusionCounts(template.classCount);
+            shards.add(counts);
+            return new WeakReference<>(counts);
+        });
+    }
+
+    /**
+     * Returns the calling thread's counts. The queue holds them strongly while the matrix is in use.
+     */
+    private ConfusionCounts shard() {
+        return local.get().get();
+    }
+
+    @Override
+    public void increment(Integer predicted, Integer actual) {
+        shard().increment(predicted, actual);
+    }
+
+    public void increment(int predicted, int actual) {
+        shard().increment(predicted, actual);
+    }
+
+    /**
+     * Adds the counts of another matrix to the calling thread's counts
+     *
+     * @throws IllegalArgumentException if {@code other} is this matrix, or is not one of the matrices in this
+     *                                  package
+     */
+    @Override
+    public ConcurrentConfusionMatrix merge(MergeableConfusionMatrix other) {
+        Preconditions.checkArgument(other != this, "A confusion matrix cannot be merged into itself");
+        if (other instanceof AbstractConfusionMatrix) {
+            shard().merge(((AbstractConfusionMatrix) other).counts);
+        } else if (other instanceof ConcurrentConfusionMatrix) {
+            ((ConcurrentConfusionMatrix) other).mergeInto(shard());
+        } else {
+            throw new IllegalArgumentException("Cannot merge a " + other.getClass().getSimpleName());
+        }
+        return this;
+    }
+
+    void mergeInto(ConfusionCounts target) {
+        for (ConfusionCounts shard : shards) {
+            target.merge(shard);
+        }
+    }
+
+    @Override
+    public ConcurrentConfusionMatrix emptyCopy() {
+        return new ConcurrentConfusionMatrix(template);
+    }
+
+    /**
+     * Returns an ordinary matrix holding the combined counts of every thread
+     */
+    public AbstractConfusionMatrix snapshot() {
+        return template.emptyCopy().merge(this);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    @Override
+    public Table toTable() {
+        return snapshot().toTable();
+    }
+
+    @Override
+    public double accuracy() {
+        return snapshot().accuracy();
+    }
+
+    @Override
+    public Table metrics() {
+        return snapshot().metrics();
+    }
+
+    @Override
+    public Table summaryMetrics() {
+        return snapshot().summaryMetrics();
+    }
+}
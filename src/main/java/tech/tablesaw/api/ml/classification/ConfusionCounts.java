@@ -0,0 +1,290 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
+/**
+ * The counts of a confusion matrix, indexed by the integer codes of the predicted and actual classes.
+ *
+ * Counts are held in a dense row-major array of primitive longs, so an increment is a single array update. The
+ * array starts small and grows as larger codes are seen, so a matrix only pays for the classes that appear. When
+ * the codes get too large for a square array to be practical, or are negative, the counts move to a hash map of
+ * the non-zero cells instead.
+ */
+final class ConfusionCounts {
+
+    /**
+     * The largest number of classes held densely; the array then takes 8MB. Since the array only grows to the
+     * codes seen, only a matrix that actually sees that many classes pays for them.
+     */
+    static final int MAX_DENSE_CLASSES = 1024;
+
+    /**
+     * The most classes the dense array is allocated for before any are seen
+     */
+    private static final int INITIAL_DENSE_CLASSES = 16;
+
+    /**
+     * Receives the non-zero cells of a confusion matrix
+     */
+    interface CellConsumer {
+        void accept(int predicted, int actual, long count);
+    }
+
+    /**
+     * The row and column totals and the diagonal of a confusion matrix, for each class that appears in it
+     */
+    static final class Marginals {
+
+        // the codes of the classes, in ascending order, and for each the number of rows predicted as the class,
+        // actually in the class, and both
+        final int[] codes;
+        final long[] predicted;
+        final long[] actual;
+        final long[] correct;
+        final long total;
+
+        private Marginals(int[] codes, long[] predicted, long[] actual, long[] correct, long total) {
+            this.codes = codes;
+            this.predicted = predicted;
+            this.actual = actual;
+            this.correct = correct;
+            this.total = total;
+        }
+    }
+
+    // the dense counts, indexed by predicted * size + actual, or null once the counts are sparse
+    private long[] dense;
+    private int size;
+
+    // the sparse counts, keyed by predicted in the high and actual in the low 32 bits
+    private Long2LongOpenHashMap sparse;
+
+    private long total;
+
+    /**
+     * @param classCount the expected number of classes; codes beyond it are still accepted
+     */
+    ConfusionCounts(int classCount) {
+        if (classCount <= MAX_DENSE_CLASSES) {
+            this.size = Math.max(Math.min(classCount, INITIAL_DENSE_CLASSES), 1);
+            this.dense = new long[size * size];
+        } else {
+            this.sparse = new Long2LongOpenHashMap();
+        }
+    }
+
+    void increment(int predicted, int actual) {
+        if (dense != null && predicted >= 0 && actual >= 0 && predicted < size && actual < size) {
+            dense[predicted * size + actual]++;
+            total++;
+        } else {
+            add(predicted, actual, 1);
+        }
+    }
+
+    void add(int predicted, int actual, long count) {
+        if (dense != null && (predicted < 0 || actual < 0 || predicted >= size || actual >= size)) {
+            grow(Math.min(predicted, actual), Math.max(predicted, actual));
+        }
+        if (dense != null) {
+            dense[predicted * size + actual] += count;
+        } else {
+            sparse.addTo(key(predicted, actual), count);
+        }
+        total += count;
+    }
+
+    long get(int predicted, int actual) {
+        if (dense != null) {
+            if (predicted < 0 || actual < 0 || predicted >= size || actual >= size) {
+                return 0;
+            }
+            return dense[predicted * size + actual];
+        }
+        return sparse.get(key(predicted, actual));
+    }
+
+    /**
+     * Returns the number of classes the dense array has room for, or 0 once the counts are sparse
+     */
+    int denseClasses() {
+        return dense == null ? 0 : size;
+    }
+
+    long total() {
+        return total;
+    }
+
+    /**
+     * Adds the counts of {@code other} to these
+     */
+    void merge(ConfusionCounts other) {
+        if (dense != null && other.dense != null && size == other.size) {
+            for (int i = 0; i < dense.length; i++) {
+                dense[i] += other.dense[i];
+            }
+            total += other.total;
+        } else {
+            other.forEach(this::add);
+        }
+    }
+
+    /**
+     * Passes each non-zero cell to the consumer, in no particular order
+     */
+    void forEach(CellConsumer consumer) {
+        if (dense != null) {
+            for (int predicted = 0; predicted < size; predicted++) {
+                int offset = predicted * size;
+                for (int actual = 0; actual < size; actual++) {
+                    long count = dense[offset + actual];
+                    if (count != 0) {
+                        consumer.accept(predicted, actual, count);
+                    }
+                }
+            }
+        } else {
+            for (Long2LongMap.Entry entry : sparse.long2LongEntrySet()) {
+                long key = entry.getLongKey();
+                consumer.accept((int) (key >> 32), (int) key, entry.getLongValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows on the diagonal, i.e. classified correctly
+     */
+    long correct() {
+        long correct = 0;
+        if (dense != null) {
+            for (int code = 0; code < size; code++) {
+                correct += dense[code * size + code];
+            }
+        } else {
+            for (Long2LongMap.Entry entry : sparse.long2LongEntrySet()) {
+                long key = entry.getLongKey();
+                if ((int) (key >> 32) == (int) key) {
+                    correct += entry.getLongValue();
+                }
+            }
+        }
+        return correct;
+    }
+
+    /**
+     * Computes the marginals of every class in a single pass over the counts
+     */
+    Marginals marginals() {
+        if (dense != null) {
+            long[] predicted = new long[size];
+            long[] actual = new long[size];
+            long[] correct = new long[size];
+            for (int p = 0; p < size; p++) {
+                int offset = p * size;
+                long rowTotal = 0;
+                for (int a = 0; a < size; a++) {
+                    long count = dense[offset + a];
+                    rowTotal += count;
+                    actual[a] += count;
+                }
+                predicted[p] = rowTotal;
+                correct[p] = dense[offset + p];
+            }
+            int present = 0;
+            for (int code = 0; code < size; code++) {
+                if (predicted[code] != 0 || actual[code] != 0) {
+                    present++;
+                }
+            }
+            int[] codes = new int[present];
+            long[] p = new long[present];
+            long[] a = new long[present];
+            long[] c = new long[present];
+            int i = 0;
+            for (int code = 0; code < size; code++) {
+                if (predicted[code] != 0 || actual[code] != 0) {
+                    codes[i] = code;
+                    p[i] = predicted[code];
+                    a[i] = actual[code];
+                    c[i] = correct[code];
+                    i++;
+                }
+            }
+            return new Marginals(codes, p, a, c, total);
+        }
+
+        Int2LongOpenHashMap predicted = new Int2LongOpenHashMap();
+        Int2LongOpenHashMap actual = new Int2LongOpenHashMap();
+        Int2LongOpenHashMap correct = new Int2LongOpenHashMap();
+        IntSortedSet present = new IntRBTreeSet();
+        forEach((p, a, count) -> {
+            predicted.addTo(p, count);
+            actual.addTo(a, count);
+            if (p == a) {
+                correct.addTo(p, count);
+            }
+            present.add(p);
+            present.add(a);
+        });
+        int[] codes = present.toIntArray();
+        long[] p = new long[codes.length];
+        long[] a = new long[codes.length];
+        long[] c = new long[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            p[i] = predicted.get(codes[i]);
+            a[i] = actual.get(codes[i]);
+            c[i] = correct.get(codes[i]);
+        }
+        return new Marginals(codes, p, a, c, total);
+    }
+
+    /**
+     * Returns the codes that appear as either a predicted or an actual class, in ascending order
+     */
+    int[] codes() {
+        IntSortedSet codes = new IntRBTreeSet();
+        forEach((predicted, actual, count) -> {
+            codes.add(predicted);
+            codes.add(actual);
+        });
+        return codes.toIntArray();
+    }
+
+    private void grow(int smallest, int largest) {
+        if (smallest < 0 || largest >= MAX_DENSE_CLASSES) {
+            sparse = new Long2LongOpenHashMap();
+            forEach((predicted, actual, count) -> sparse.put(key(predicted, actual), count));
+            dense = null;
+            return;
+        }
+        int grown = Math.min(MAX_DENSE_CLASSES, Math.max(largest + 1, 2 * size));
+        long[] counts = new long[grown * grown];
+        for (int predicted = 0; predicted < size; predicted++) {
+            System.arraycopy(dense, predicted * size, counts, predicted * grown, size);
+        }
+        dense = counts;
+        size = grown;
+    }
+
+    private static long key(int predicted, int actual) {
+        return ((long) predicted << 32) | (actual & 0xFFFFFFFFL);
+    }
+}
@@ -40,21 +40,21 @@ public class Knn extends AbstractClassifier {
         return classifierModel.predict(data);
     }
 
-    public ConfusionMatrix predictMatrix(IntConvertibleColumn labels, NumberColumn... predictors) {
+    public MergeableConfusionMatrix predictMatrix(IntConvertibleColumn labels, NumberColumn... predictors) {
         Preconditions.checkArgument(predictors.length > 0);
 
         SortedSet<Object> labelSet = new TreeSet<>(labels.asIntegerSet());
-        ConfusionMatrix confusion = new StandardConfusionMatrix(labelSet);
+        StandardConfusionMatrix confusion = new StandardConfusionMatrix(labelSet);
 
         populateMatrix(labels.asIntArray(), confusion, predictors);
         return confusion;
     }
 
-    public ConfusionMatrix predictMatrix(NumberColumn labels, NumberColumn... predictors) {
+    public MergeableConfusionMatrix predictMatrix(NumberColumn labels, NumberColumn... predictors) {
         Preconditions.checkArgument(predictors.length > 0);
 
         SortedSet<Object> labelSet = new TreeSet<>(labels.asIntegerSet());   // TODO NEEDS TO BE an INT SET
-        ConfusionMatrix confusion = new StandardConfusionMatrix(labelSet);
+        StandardConfusionMatrix confusion = new StandardConfusionMatrix(labelSet);
 
         populateMatrix(labels.asIntArray(), confusion, predictors);
         return confusion;
@@ -20,28 +20,40 @@ import tech.tablesaw.api.NumberColumn;
 import tech.tablesaw.api.IntConvertibleColumn;
 import tech.tablesaw.util.DoubleArrays;
 
+import java.util.Arrays;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 public class LogisticRegression extends AbstractClassifier {
 
+    /**
+     * The number of rows scored by a single task when posteriors are computed in parallel
+     */
+    private static final int BLOCK_SIZE = 4096;
+
     private final smile.classification.LogisticRegression classifierModel;
+    private final int classCount;
 
-    private LogisticRegression(smile.classification.LogisticRegression classifierModel) {
+    private LogisticRegression(smile.classification.LogisticRegression classifierModel, int[] labels) {
         this.classifierModel = classifierModel;
+        // smile requires the labels to be 0 to k - 1
+        this.classCount = Arrays.stream(labels).max().orElse(0) + 1;
     }
 
     public static LogisticRegression learn(IntConvertibleColumn labels, NumberColumn... predictors) {
+        int[] classes = labels.asIntArray();
         smile.classification.LogisticRegression classifierModel =
-                new smile.classification.LogisticRegression(DoubleArrays.to2dArray(predictors), labels.asIntArray());
-        return new LogisticRegression(classifierModel);
+                new smile.classification.LogisticRegression(DoubleArrays.to2dArray(predictors), classes);
+        return new LogisticRegression(classifierModel, classes);
     }
 
     public static LogisticRegression learn(IntConvertibleColumn labels, double lambda, NumberColumn... predictors) {
+        int[] classes = labels.asIntArray();
         smile.classification.LogisticRegression classifierModel =
-                new smile.classification.LogisticRegression(DoubleArrays.to2dArray(predictors), labels.asIntArray(),
+                new smile.classification.LogisticRegression(DoubleArrays.to2dArray(predictors), classes,
                         lambda);
-        return new LogisticRegression(classifierModel);
+        return new LogisticRegression(classifierModel, classes);
     }
 
     public static LogisticRegression learn(IntConvertibleColumn labels,
@@ -50,25 +62,26 @@ public class LogisticRegression extends AbstractClassifier {
                                            int maxIters,
                                            NumberColumn... predictors) {
 
+        int[] classes = labels.asIntArray();
         smile.classification.LogisticRegression classifierModel =
                 new smile.classification.LogisticRegression(
                         DoubleArrays.to2dArray(predictors),
-                        labels.asIntArray(),
+                        classes,
                         lambda,
                         tolerance,
                         maxIters);
-        return new LogisticRegression(classifierModel);
+        return new LogisticRegression(classifierModel, classes);
     }
 
     public int predict(double[] data) {
         return classifierModel.predict(data);
     }
 
-    public ConfusionMatrix predictMatrix(IntConvertibleColumn labels, NumberColumn... predictors) {
+    public MergeableConfusionMatrix predictMatrix(IntConvertibleColumn labels, NumberColumn... predictors) {
         Preconditions.checkArgument(predictors.length > 0);
 
         SortedSet<Object> labelSet = new TreeSet<>(labels.asIntegerSet());
-        ConfusionMatrix confusion = new StandardConfusionMatrix(labelSet);
+        StandardConfusionMatrix confusion = new StandardConfusionMatrix(labelSet);
 
         populateMatrix(labels.asIntArray(), confusion, predictors);
         return confusion;
@@ -92,6 +105,49 @@ public class LogisticRegression extends AbstractClassifier {
         return classifierModel.predict(data);
     }
 
+    /**
+     * Returns the posterior probability of the given class for every row, computed in parallel
+     *
+     * @param classCode the integer code of the class, as in the labels the model was trained on
+     */
+    public double[] posteriors(int classCode, NumberColumn... predictors) {
+        Preconditions.checkArgument(predictors.length > 0);
+        int rows = predictors[0].size();
+        Preconditions.checkArgument(classCode >= 0 && classCode < classCount,
+                "The model has no class %s", classCode);
+        double[] posteriors = new double[rows];
+        int blocks = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            double[] data = new double[predictors.length];
+            double[] posteriori = new double[classCount];
+            int to = Math.min(rows, (block + 1) * BLOCK_SIZE);
+            for (int row = block * BLOCK_SIZE; row < to; row++) {
+                for (int col = 0; col < predictors.length; col++) {
+                    data[col] = predictors[col].get(row);
+                }
+                classifierModel.predict(data, posteriori);
+                posteriors[row] = posteriori[classCode];
+            }
+        });
+        return posteriors;
+    }
+
+    /**
+     * Returns the ROC and precision-recall curves of the model's posterior probability of the positive class,
+     * exactly for small sets of rows and from a histogram of the probabilities for large ones
+     *
+     * @param labels        the actual class of each row
+     * @param positiveClass the code of the class treated as positive
+     */
+    public ThresholdCurves thresholdCurves(IntConvertibleColumn labels, int positiveClass, NumberColumn... predictors) {
+        int[] actual = labels.asIntArray();
+        boolean[] positive = new boolean[actual.length];
+        for (int i = 0; i < actual.length; i++) {
+            positive[i] = actual[i] == positiveClass;
+        }
+        return ThresholdCurves.of(posteriors(positiveClass, predictors), positive);
+    }
+
     public double logLikelihood() {
         return classifierModel.loglikelihood();
     }
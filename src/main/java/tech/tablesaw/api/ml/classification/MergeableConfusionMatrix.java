@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import tech.tablesaw.api.Table;
+
+/**
+ * A confusion matrix that can be filled in pieces, on different threads or from different shards of the data, and
+ * the pieces merged. The matrices in this package count by the integer codes of the classes, merge with each
+ * other, and compute their metrics in one pass over the counts.
+ */
+public interface MergeableConfusionMatrix extends ConfusionMatrix {
+
+    /**
+     * Adds the counts of another confusion matrix over the same classes to this one
+     *
+     * @return this matrix
+     * @throws IllegalArgumentException if {@code other} is this matrix, or is not one of the matrices in this
+     *                                  package
+     */
+    MergeableConfusionMatrix merge(MergeableConfusionMatrix other);
+
+    /**
+     * Returns a new, empty matrix over the same classes, which can be filled independently and merged back
+     */
+    MergeableConfusionMatrix emptyCopy();
+
+    /**
+     * Returns the precision, recall, F1 score and support of each class, followed by their macro (unweighted
+     * mean over classes) and micro (pooled over rows) averages
+     */
+    Table metrics();
+
+    /**
+     * Returns the overall metrics of the matrix as a table of names and values: accuracy, Cohen's kappa,
+     * Matthews correlation coefficient, and the macro and micro averaged precision, recall and F1 score
+     */
+    Table summaryMetrics();
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import com.google.common.base.Preconditions;
+
+import java.util.stream.IntStream;
+
+/**
+ * Counts positive and negative examples in fixed-width bins of a classifier's score, from which ROC and
+ * precision-recall curves can be drawn without sorting the scores.
+ *
+ * The cost per score is one bin increment, and histograms filled from different shards of the data, or on
+ * different threads, can be merged. The curves have one point per non-empty bin, so the bin width bounds how far
+ * they, and the areas under them, can be from the exact ones.
+ */
+public class ScoreHistogram {
+
+    /**
+     * The number of scores counted by a single task when an array is added in parallel
+     */
+    private static final int BLOCK_SIZE = 8192;
+
+    private final int bins;
+    private final double min;
+    private final double max;
+    private final long[] positives;
+    private final long[] negatives;
+
+    /**
+     * Creates an empty histogram of scores in [0, 1], such as posterior probabilities
+     */
+    public ScoreHistogram(int bins) {
+        this(bins, 0.0, 1.0);
+    }
+
+    /**
+     * Creates an empty histogram of scores in [min, max]. Scores outside the range are counted in the first or last
+     * bin.
+     */
+    public ScoreHistogram(int bins, double min, double max) {
+        Preconditions.checkArgument(bins > 0, "The number of bins must be positive: %s", bins);
+        Preconditions.checkArgument(max > min, "The range [%s, %s] is empty", min, max);
+        this.bins = bins;
+        this.min = min;
+        this.max = max;
+        this.positives = new long[bins];
+        this.negatives = new long[bins];
+    }
+
+    /**
+     * Counts one example. Missing (NaN) scores are ignored.
+     */
+    public void add(double score, boolean positive) {
+        if (Double.isNaN(score)) {
+            return;
+        }
+        int bin = (int) ((score - min) / (max - min) * bins);
+        bin = Math.max(0, Math.min(bins - 1, bin));
+        if (positive) {
+            positives[bin]++;
+        } else {
+            negatives[bin]++;
+        }
+    }
+
+    /**
+     * Counts every example, filling a histogram per block of scores in parallel and merging them
+     */
+    public ScoreHistogram addAll(double[] scores, boolean[] positive) {
+        Preconditions.checkArgument(scores.length == positive.length,
+                "There are %s scores but %s labels", scores.length, positive.length);
+        int blocks = (scores.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ScoreHistogram counted = IntStream.range(0, blocks).parallel().collect(
+                this::emptyCopy,
+                (histogram, block) -> {
+                    int to = Math.min(scores.length, (block + 1) * BLOCK_SIZE);
+                    for (int i = block * BLOCK_SIZE; i < to; i++) {
+                        histogram.add(scores[i], positive[i]);
+                    }
+                },
+                ScoreHistogram::merge);
+        return merge(counted);
+    }
+
+    /**
+     * Adds the counts of a histogram with the same bins to this one
+     */
+    public ScoreHistogram merge(ScoreHistogram other) {
+        Preconditions.checkArgument(bins == other.bins && min == other.min && max == other.max,
+                "Cannot merge histograms with different bins");
+        for (int i = 0; i < bins; i++) {
+            positives[i] += other.positives[i];
+            negatives[i] += other.negatives[i];
+        }
+        return this;
+    }
+
+    /**
+     * Returns a new, empty histogram with the same bins
+     */
+    public ScoreHistogram emptyCopy() {
+        return new ScoreHistogram(bins, min, max);
+    }
+
+    /**
+     * Returns the ROC and precision-recall curves, with one threshold at the lower edge of each non-empty bin
+     */
+    public ThresholdCurves curves() {
+        int points = 1;
+        for (int i = 0; i < bins; i++) {
+            if (positives[i] != 0 || negatives[i] != 0) {
+                points++;
+            }
+        }
+        double[] thresholds = new double[points];
+        long[] truePositives = new long[points];
+        long[] falsePositives = new long[points];
+        thresholds[0] = Double.POSITIVE_INFINITY;
+
+        // sweep the threshold down from the top bin, accumulating the examples that are then predicted positive
+        int point = 1;
+        for (int i = bins - 1; i >= 0; i--) {
+            if (positives[i] == 0 && negatives[i] == 0) {
+                continue;
+            }
+            thresholds[point] = min + (max - min) * i / bins;
+            truePositives[point] = truePositives[point - 1] + positives[i];
+            falsePositives[point] = falsePositives[point - 1] + negatives[i];
+            point++;
+        }
+        return new ThresholdCurves(thresholds, truePositives, falsePositives);
+    }
+}
@@ -14,33 +14,21 @@
 
 package tech.tablesaw.api.ml.classification;
 
-import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
-
-import tech.tablesaw.api.DoubleColumn;
-import tech.tablesaw.api.NumberColumn;
-import tech.tablesaw.api.StringColumn;
-
-import java.util.ArrayList;
-import java.util.List;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * A confusion matrix is used to measure the accuracy of a classifier by counting the number of correct and
  * incorrect values produced when testing the classifier such that the counts are made for every combination of
  * correct and incorrect classification
  */
-public class StandardConfusionMatrix implements ConfusionMatrix {
-
-    private final Table<Integer, Integer, Integer> table = TreeBasedTable.create();
+public class StandardConfusionMatrix extends AbstractConfusionMatrix {
 
     private SortedMap<Integer, Object> labels = new TreeMap<>();
 
     public StandardConfusionMatrix(SortedSet<Object> labels) {
-
+        super(labels.size());
         int i = 0;
         for (Object object : labels) {
             this.labels.put(i, object);
@@ -48,65 +36,18 @@ public class StandardConfusionMatrix implements ConfusionMatrix {
         }
     }
 
-    public void increment(Integer predicted, Integer actual) {
-        Integer v = table.get(predicted, actual);
-        if (v == null) {
-            table.put(predicted, actual, 1);
-        } else {
-            table.put(predicted, actual, v + 1);
-        }
+    private StandardConfusionMatrix(SortedMap<Integer, Object> labels) {
+        super(labels.size());
+        this.labels = labels;
     }
 
     @Override
-    public String toString() {
-        return toTable().toString();
+    public StandardConfusionMatrix emptyCopy() {
+        return new StandardConfusionMatrix(labels);
     }
 
-    public tech.tablesaw.api.Table toTable() {
-        tech.tablesaw.api.Table t = tech.tablesaw.api.Table.create("Confusion Matrix");
-        t.addColumns(StringColumn.create(""));
-
-        // make a set of all the values needed, from the prediction set or the actual set
-        TreeSet<Integer> allValues = new TreeSet<>();
-        allValues.addAll(table.columnKeySet());
-        allValues.addAll(table.rowKeySet());
-
-        for (Integer comparable : allValues) {
-            t.addColumns(DoubleColumn.create(String.valueOf(labels.get(comparable))));
-            t.column(0).appendCell("Predicted " + labels.get(comparable));
-        }
-
-        // put them in a list so they can be accessed by index number
-        List<Comparable<?>> valuesList = new ArrayList<>(allValues);
-        int n = 0;
-        for (int r = 0; r < valuesList.size(); r++) {
-            for (int c = 0; c < valuesList.size(); c++) {
-                Integer value = table.get(valuesList.get(r), valuesList.get(c));
-                if (value == null) {
-                    t.numberColumn(c + 1).append(0);
-                } else {
-                    t.numberColumn(c + 1).append(value);
-                    n = n + value;
-                }
-            }
-        }
-        t.column(0).setName("n = " + n);
-        for (int c = 1; c <= valuesList.size(); c++) {
-            t.column(c).setName("Actual " + labels.get(c - 1));
-        }
-        return t;
-    }
-
-    public double accuracy() {
-        int hits = 0;
-        int misses = 0;
-        for (Table.Cell<Integer, Integer, Integer> cell : table.cellSet()) {
-            if (cell.getRowKey().equals(cell.getColumnKey())) {
-                hits = hits + cell.getValue();
-            } else {
-                misses = misses + cell.getValue();
-            }
-        }
-        return hits / ((hits + misses) * 1.0);
+    @Override
+    String label(int code) {
+        return labels.containsKey(code) ? String.valueOf(labels.get(code)) : String.valueOf(code);
     }
 }
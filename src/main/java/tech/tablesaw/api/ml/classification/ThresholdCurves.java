@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import com.google.common.base.Preconditions;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * The ROC and precision-recall curves of a binary classifier's scores, as the threshold above which an example
+ * is predicted positive sweeps from high to low.
+ *
+ * Curves are computed either exactly, by sorting the scores, or approximately from a {@link ScoreHistogram},
+ * which needs no sort and can be filled in parallel or from shards of the data.
+ */
+public class ThresholdCurves {
+
+    /**
+     * The largest number of scores {@link #of(double[], boolean[])} sorts; larger sets are binned
+     */
+    public static final int EXACT_LIMIT = 100_000;
+
+    /**
+     * The number of bins {@link #of(double[], boolean[])} uses for large sets of scores in [0, 1]
+     */
+    public static final int DEFAULT_BINS = 10_000;
+
+    // for each point, from the highest threshold to the lowest, the number of true and false positives among the
+    // examples scoring at or above the threshold
+    private final double[] thresholds;
+    private final long[] truePositives;
+    private final long[] falsePositives;
+    private final long positives;
+    private final long negatives;
+
+    ThresholdCurves(double[] thresholds, long[] truePositives, long[] falsePositives) {
+        this.thresholds = thresholds;
+        this.truePositives = truePositives;
+        this.falsePositives = falsePositives;
+        this.positives = truePositives[truePositives.length - 1];
+        this.negatives = falsePositives[falsePositives.length - 1];
+    }
+
+    /**
+     * Computes the curves exactly for small sets of scores and from a histogram of {@link #DEFAULT_BINS} bins
+     * over [0, 1] for large ones
+     *
+     * @param scores   the score of each example, such as the posterior probability of the positive class
+     * @param positive whether each example actually belongs to the positive class
+     */
+    public static ThresholdCurves of(double[] scores, boolean[] positive) {
+        if (scores.length <= EXACT_LIMIT) {
+            return exact(scores, positive);
+        }
+        return new ScoreHistogram(DEFAULT_BINS).addAll(scores, positive).curves();
+    }
+
+    /**
+     * Computes the curves exactly, with one point for each distinct score. Missing (NaN) scores are ignored.
+     *
+     * The first point, at which nothing is predicted positive, has the threshold +Infinity. Infinite scores are
+     * kept: +Infinity scores get a point of their own after the first, with the same threshold, and -Infinity
+     * scores the last point.
+     */
+    public static ThresholdCurves exact(double[] scores, boolean[] positive) {
+        Preconditions.checkArgument(scores.length == positive.length,
+                "There are %s scores but %s labels", scores.length, positive.length);
+        int[] order = IntStream.range(0, scores.length)
+                .filter(i -> !Double.isNaN(scores[i]))
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> -scores[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        double[] thresholds = new double[order.length + 1];
+        long[] truePositives = new long[order.length + 1];
+        long[] falsePositives = new long[order.length + 1];
+        thresholds[0] = Double.POSITIVE_INFINITY;
+        int point = 0;
+        for (int i = 0; i < order.length; i++) {
+            double score = scores[order[i]];
+            // tied scores share a single point, since no threshold separates them; the first score always starts
+            // a point, even at +Infinity, so the first point stays the one where nothing is predicted positive
+            if (i == 0 || score != thresholds[point]) {
+                point++;
+                thresholds[point] = score;
+                truePositives[point] = truePositives[point - 1];
+                falsePositives[point] = falsePositives[point - 1];
+            }
+            if (positive[order[i]]) {
+                truePositives[point]++;
+            } else {
+                falsePositives[point]++;
+            }
+        }
+        return new ThresholdCurves(Arrays.copyOf(thresholds, point + 1),
+                Arrays.copyOf(truePositives, point + 1),
+                Arrays.copyOf(falsePositives, point + 1));
+    }
+
+    public int size() {
+        return thresholds.length;
+    }
+
+    private double truePositiveRate(int point) {
+        return positives == 0 ? 0 : truePositives[point] / (double) positives;
+    }
+
+    private double falsePositiveRate(int point) {
+        return negatives == 0 ? 0 : falsePositives[point] / (double) negatives;
+    }
+
+    /**
+     * Returns the precision at a point, taken to be 1 when nothing is predicted positive
+     */
+    private double precision(int point) {
+        long predicted = truePositives[point] + falsePositives[point];
+        return predicted == 0 ? 1.0 : truePositives[point] / (double) predicted;
+    }
+
+    /**
+     * Returns the area under the ROC curve, by the trapezoidal rule. This is the probability that a randomly
+     * chosen positive example scores above a randomly chosen negative one, counting ties as half.
+     */
+    public double rocAuc() {
+        double area = 0;
+        for (int i = 1; i < thresholds.length; i++) {
+            area += (falsePositiveRate(i) - falsePositiveRate(i - 1))
+                    * (truePositiveRate(i) + truePositiveRate(i - 1)) / 2;
+        }
+        return area;
+    }
+
+    /**
+     * Returns the average precision, the area under the precision-recall curve as a step function: the precision
+     * at each threshold weighted by the increase in recall there
+     */
+    public double averagePrecision() {
+        double area = 0;
+        for (int i = 1; i < thresholds.length; i++) {
+            area += (truePositiveRate(i) - truePositiveRate(i - 1)) * precision(i);
+        }
+        return area;
+    }
+
+    /**
+     * Returns the ROC curve as a table of thresholds, false positive rates and true positive rates
+     */
+    public Table rocTable() {
+        NumberColumn threshold = DoubleColumn.create("Threshold");
+        NumberColumn fpr = DoubleColumn.create("False Positive Rate");
+        NumberColumn tpr = DoubleColumn.create("True Positive Rate");
+        for (int i = 0; i < thresholds.length; i++) {
+            threshold.append(thresholds[i]);
+            fpr.append(falsePositiveRate(i));
+            tpr.append(truePositiveRate(i));
+        }
+        Table table = Table.create("ROC Curve");
+        table.addColumns(threshold, fpr, tpr);
+        return table;
+    }
+
+    /**
+     * Returns the precision-recall curve as a table of thresholds, recalls and precisions
+     */
+    public Table precisionRecallTable() {
+        NumberColumn threshold = DoubleColumn.create("Threshold");
+        NumberColumn recall = DoubleColumn.create("Recall");
+        NumberColumn precision = DoubleColumn.create("Precision");
+        for (int i = 0; i < thresholds.length; i++) {
+            threshold.append(thresholds[i]);
+            recall.append(truePositiveRate(i));
+            precision.append(precision(i));
+        }
+        Table table = Table.create("Precision-Recall Curve");
+        table.addColumns(threshold, recall, precision);
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ROC AUC: %.4f, average precision: %.4f (%d positives, %d negatives)",
+                rocAuc(), averagePrecision(), positives, negatives);
+    }
+}
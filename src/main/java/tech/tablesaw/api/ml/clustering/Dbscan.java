@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import com.google.common.base.Preconditions;
+import smile.clustering.Clustering;
+import smile.neighbor.KDTree;
+import smile.neighbor.Neighbor;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.util.DoubleArrays;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Density-based clustering (DBSCAN; Ester et al., "A density-based algorithm for discovering clusters in large
+ * spatial databases with noise", 1996). A core point has at least minPts other points within the radius of it;
+ * core points within the radius of each other are in the same cluster, a border point joins the cluster of its
+ * nearest core point within the radius, and every other point is an {@link #OUTLIER}, as in smile's DBScan.
+ *
+ * The neighborhoods are found in a uniform grid of cells as wide as the radius, or for more than
+ * {@link GridIndex#MAX_DIMENSIONS} columns in a k-d tree, rather than by comparing every pair of points. The
+ * neighborhood queries run in parallel blocks of rows, and the core points are joined in a concurrent union-find
+ * forest (Patwary et al., "A new scalable parallel DBSCAN algorithm using the disjoint-set data structure", 2012),
+ * so no cluster is expanded point by point.
+ */
+public class Dbscan {
+
+    /**
+     * The label of the points in no cluster
+     */
+    public static final int OUTLIER = Clustering.OUTLIER;
+
+    /**
+     * The number of rows handled by a single task. Each row is a range query, so the blocks are kept small to
+     * balance the load between dense and sparse regions.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * The points within the search radius of a point, including any at the same place
+     */
+    interface RangeIndex {
+
+        void range(double[] x, IntConsumer neighbor);
+    }
+
+    private final NumberColumn[] inputColumns;
+    private final double[][] data;
+    private final double radius;
+    private final RangeIndex index;
+    private final boolean[] core;
+    private final int[] labels;
+    private final int[] sizes;
+
+    /**
+     * @param minPts the number of other points within the radius of a point that make it a core point
+     * @param radius the radius of the neighborhoods, in the Euclidean distance
+     */
+    public Dbscan(int minPts, double radius, NumberColumn... columns) {
+        Preconditions.checkArgument(minPts > 0, "minPts must be positive: %s", minPts);
+        Preconditions.checkArgument(radius > 0, "The radius must be positive: %s", radius);
+        this.inputColumns = columns;
+        this.data = DoubleArrays.to2dArray(columns);
+        this.radius = radius;
+        this.index = index(data, radius);
+        int n = data.length;
+
+        this.core = new boolean[n];
+        forEachRow(n, i -> {
+            int[] count = new int[1];
+            index.range(data[i], j -> count[0]++);
+            // the point itself is among its neighbors
+            core[i] = count[0] - 1 >= minPts;
+        });
+
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+        }
+        forEachRow(n, i -> {
+            if (core[i]) {
+                index.range(data[i], j -> {
+                    if (j < i && core[j]) {
+                        union(parent, i, j);
+                    }
+                });
+            }
+        });
+
+        // the clusters are numbered in order of their first core point
+        this.labels = new int[n];
+        int[] cluster = new int[n];
+        Arrays.fill(cluster, -1);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (core[i]) {
+                int root = find(parent, i);
+                if (cluster[root] < 0) {
+                    cluster[root] = k++;
+                }
+                labels[i] = cluster[root];
+            }
+        }
+        forEachRow(n, i -> {
+            if (!core[i]) {
+                labels[i] = nearestCore(data[i], i);
+            }
+        });
+
+        // as in smile, the last size is that of the outliers
+        this.sizes = new int[k + 1];
+        for (int label : labels) {
+            sizes[label == OUTLIER ? k : label]++;
+        }
+    }
+
+    private static RangeIndex index(double[][] data, double radius) {
+        GridIndex grid = GridIndex.of(data, radius);
+        if (grid != null) {
+            return grid;
+        }
+        KDTree<double[]> tree = new KDTree<>(data, data);
+        tree.setIdenticalExcluded(false);
+        return (x, neighbor) -> {
+            List<Neighbor<double[], double[]>> neighbors = new ArrayList<>();
+            tree.range(x, radius, neighbors);
+            for (Neighbor<double[], double[]> found : neighbors) {
+                neighbor.accept(found.index);
+            }
+        };
+    }
+
+    private static void forEachRow(int n, IntConsumer action) {
+        IntStream.range(0, (n + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel().forEach(block -> {
+            int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+            for (int row = block * BLOCK_SIZE; row < to; row++) {
+                action.accept(row);
+            }
+        });
+    }
+
+    /**
+     * Returns the root of i's tree, halving the path to it. Other threads may link the root meanwhile, so the
+     * result is only known to have been a root at some point during the call.
+     */
+    private static int find(AtomicIntegerArray parent, int i) {
+        while (true) {
+            int p = parent.get(i);
+            if (p == i) {
+                return i;
+            }
+            int grandparent = parent.get(p);
+            if (grandparent != p) {
+                parent.compareAndSet(i, p, grandparent);
+            }
+            i = p;
+        }
+    }
+
+    /**
+     * Joins the trees of a and b by linking the larger root under the smaller, retrying if another thread links
+     * either root first
+     */
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) {
+                return;
+            }
+            int high = Math.max(a, b);
+            int low = Math.min(a, b);
+            if (parent.compareAndSet(high, high, low)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the cluster of the nearest core point within the radius of x, other than the point {@code self},
+     * or {@link #OUTLIER} if there is none
+     */
+    private int nearestCore(double[] x, int self) {
+        int[] nearest = {-1};
+        double[] best = {Double.POSITIVE_INFINITY};
+        index.range(x, j -> {
+            if (j != self && core[j]) {
+                double d = DistanceKernel.squaredDistance(x, data[j]);
+                if (d < best[0] || d == best[0] && j < nearest[0]) {
+                    best[0] = d;
+                    nearest[0] = j;
+                }
+            }
+        });
+        return nearest[0] < 0 ? OUTLIER : labels[nearest[0]];
+    }
+
+    /**
+     * Returns the cluster of the nearest core point within the radius of x, or {@link #OUTLIER} if there is none
+     */
+    public int predict(double[] x) {
+        return nearestCore(x, -1);
+    }
+
+    /**
+     * Returns the cluster of each row of the given columns, which must match the columns the model was built
+     * from, found in parallel blocks. The result can be added to the columns' table.
+     */
+    public DoubleColumn assign(NumberColumn... columns) {
+        Preconditions.checkArgument(columns.length == inputColumns.length,
+                "Expected %s columns but got %s", inputColumns.length, columns.length);
+        double[][] rows = DoubleArrays.to2dArray(columns);
+        int[] assigned = new int[rows.length];
+        forEachRow(rows.length, i -> assigned[i] = predict(rows[i]));
+        return DoubleColumn.create("Cluster", assigned);
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getClusterCount() {
+        return sizes.length - 1;
+    }
+
+    /**
+     * Returns the cluster of each row, or {@link #OUTLIER} for the rows in no cluster
+     */
+    public int[] getClusterLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the size of each cluster, followed by the number of outliers
+     */
+    public int[] getClusterSizes() {
+        return sizes;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * A merge tree in smile's layout: merge[i] holds the two clusters joined at step i, in increasing order, where
+ * clusters 0 to n-1 are the observations and cluster n+i is the one formed at step i, and height[i] is the
+ * dissimilarity at which they were joined. The clusters of a partition are labelled in increasing order of their
+ * numbers, as smile labels them. Smile picks the clusters below a cut with a heap selection that, for some k, keeps
+ * a cluster formed above the cut, and so returns fewer than k clusters; here they are found by union-find instead.
+ */
+final class Dendrogram {
+
+    final int[][] merge;
+    final double[] height;
+
+    Dendrogram(int[][] merge, double[] height) {
+        this.merge = merge;
+        this.height = height;
+    }
+
+    /**
+     * Builds the tree from merges found in any order, as by the nearest-neighbor chain, each joining the clusters
+     * containing observations {@code left[i]} and {@code right[i]}. The merges are sorted by height, ties kept in
+     * the order given, and the clusters numbered by a union-find pass.
+     */
+    static Dendrogram fromMerges(int n, int[] left, int[] right, double[] heights) {
+        Integer[] order = IntStream.range(0, heights.length).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingDouble(step -> heights[step]));
+
+        // the union-find forest over the observations, and the current cluster number of each root
+        int[] parent = new int[n];
+        int[] cluster = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            cluster[i] = i;
+        }
+        int[][] merge = new int[heights.length][];
+        double[] height = new double[heights.length];
+        for (int step = 0; step < order.length; step++) {
+            int a = find(parent, left[order[step]]);
+            int b = find(parent, right[order[step]]);
+            merge[step] = new int[]{Math.min(cluster[a], cluster[b]), Math.max(cluster[a], cluster[b])};
+            height[step] = heights[order[step]];
+            parent[b] = a;
+            cluster[a] = n + step;
+        }
+        return new Dendrogram(merge, height);
+    }
+
+    static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Returns the memberships of the observations in k clusters
+     */
+    int[] partition(int k) {
+        return partitions(new int[]{k})[0];
+    }
+
+    /**
+     * Returns the memberships of the observations in the clusters below the given height
+     */
+    int[] partition(double h) {
+        checkMonotonic();
+        return partition(clusters(h));
+    }
+
+    /**
+     * Returns the memberships of the observations for each of the given numbers of clusters, labelled as
+     * {@link #partition(int)} labels them. A single union-find pass replays the merges from the bottom of the
+     * tree, stopping at each cut in turn, so each cut costs little more than writing out its memberships.
+     */
+    int[][] partitions(int[] ks) {
+        int n = merge.length + 1;
+        Integer[] order = IntStream.range(0, ks.length).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingInt(cut -> -ks[cut]));
+
+        // the union-find forest over the observations, the cluster number of each root, and the root of each
+        // cluster number
+        int[] parent = new int[n];
+        int[] cluster = new int[n];
+        int[] root = new int[2 * n - 1];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            cluster[i] = i;
+            root[i] = i;
+        }
+        int[] label = new int[n];
+        int[] roots = new int[n];
+        int[][] memberships = new int[ks.length][];
+        int step = 0;
+        for (int cut : order) {
+            int k = ks[cut];
+            for (; step < n - k; step++) {
+                int a = root[merge[step][0]];
+                int b = root[merge[step][1]];
+                parent[b] = a;
+                cluster[a] = n + step;
+                root[n + step] = a;
+            }
+            // smile labels the clusters in increasing order of their numbers
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (parent[i] == i) {
+                    roots[count++] = i;
+                }
+            }
+            Integer[] sorted = IntStream.of(roots).limit(count).boxed().toArray(Integer[]::new);
+            Arrays.sort(sorted, Comparator.comparingInt(r -> cluster[r]));
+            for (int i = 0; i < count; i++) {
+                label[sorted[i]] = i;
+            }
+            int[] membership = new int[n];
+            for (int i = 0; i < n; i++) {
+                membership[i] = label[find(parent, i)];
+            }
+            memberships[cut] = membership;
+        }
+        return memberships;
+    }
+
+    /**
+     * Returns the memberships of the observations in the clusters below each of the given heights
+     */
+    int[][] partitions(double[] heights) {
+        checkMonotonic();
+        int[] ks = new int[heights.length];
+        for (int cut = 0; cut < heights.length; cut++) {
+            ks[cut] = clusters(heights[cut]);
+        }
+        return partitions(ks);
+    }
+
+    /**
+     * Returns the number of clusters below the given height
+     */
+    private int clusters(double h) {
+        int n = merge.length + 1;
+        int k = 2;
+        for (; k <= n; k++) {
+            if (height[n - k] < h) {
+                break;
+            }
+        }
+        if (k <= 2) {
+            throw new IllegalArgumentException("The parameter h is too large.");
+        }
+        return k - 1;
+    }
+
+    private void checkMonotonic() {
+        for (int i = 0; i < height.length - 1; i++) {
+            if (height[i] > height[i + 1]) {
+                throw new IllegalStateException("Non-monotonic cluster tree -- the linkage is probably not appropriate!");
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+/**
+ * The inner loops that fill a row of a {@link Proximity} matrix.
+ *
+ * Each metric is reduced to one of a few kernels by transforming the rows once beforehand: the cosine and
+ * correlation distances become one less the dot product of rows scaled to unit length, centered on their own mean
+ * for correlation, and the Mahalanobis distance becomes the Euclidean distance between rows whitened by the
+ * Cholesky factor of the covariance. Each kernel is a plain loop over primitive arrays, with the metric chosen
+ * once per row rather than once per pair. A kernel fills a segment of a row into a buffer, which the caller writes
+ * to the store in one call, so the loop over pairs makes no calls through the store's interface.
+ */
+enum DistanceKernel {
+
+    EXACT_EUCLIDEAN {
+        @Override
+        void row(double[][] data, double[] norms, int i, int from, int to, double[] distances, int offset) {
+            double[] a = data[i];
+            for (int j = from; j < to; j++) {
+                distances[offset++] = Math.sqrt(squaredDistance(a, data[j]));
+            }
+        }
+    },
+
+    /**
+     * The Euclidean distance from the norm identity, with an exact fallback where it cancels
+     */
+    EUCLIDEAN {
+        @Override
+        void row(double[][] data, double[] norms, int i, int from, int to, double[] distances, int offset) {
+            double[] a = data[i];
+            double normA = norms[i];
+            for (int j = from; j < to; j++) {
+                double squared = normA + norms[j] - 2 * dot(a, data[j]);
+                if (squared <= CANCELLATION_TOLERANCE * (normA + norms[j])) {
+                    squared = squaredDistance(a, data[j]);
+                }
+                distances[offset++] = Math.sqrt(squared);
+            }
+        }
+
+        @Override
+        double[] norms(double[][] data) {
+            return squaredNorms(data);
+        }
+    },
+
+    MANHATTAN {
+        @Override
+        void row(double[][] data, double[] norms, int i, int from, int to, double[] distances, int offset) {
+            double[] a = data[i];
+            for (int j = from; j < to; j++) {
+                double[] b = data[j];
+                double sum = 0;
+                for (int k = 0; k < a.length; k++) {
+                    sum += Math.abs(a[k] - b[k]);
+                }
+                distances[offset++] = sum;
+            }
+        }
+    },
+
+    CHEBYSHEV {
+        @Override
+        void row(double[][] data, double[] norms, int i, int from, int to, double[] distances, int offset) {
+            double[] a = data[i];
+            for (int j = from; j < to; j++) {
+                double[] b = data[j];
+                double max = 0;
+                for (int k = 0; k < a.length; k++) {
+                    max = Math.max(max, Math.abs(a[k] - b[k]));
+                }
+                distances[offset++] = max;
+            }
+        }
+    },
+
+    /**
+     * One less the dot product, for rows of unit length
+     */
+    ONE_MINUS_DOT {
+        @Override
+        void row(double[][] data, double[] norms, int i, int from, int to, double[] distances, int offset) {
+            double[] a = data[i];
+            for (int j = from; j < to; j++) {
+                distances[offset++] = Math.max(0, 1 - dot(a, data[j]));
+            }
+        }
+    },
+
+    /**
+     * One less the dot product, for rows of unit length, taken as half their squared distance so that it doesn't
+     * cancel for nearly parallel rows. A row of zeros is at distance 1 from every other.
+     */
+    EXACT_ONE_MINUS_DOT {
+        @Override
+        void row(double[][] data, double[] norms, int i, int from, int to, double[] distances, int offset) {
+            double[] a = data[i];
+            for (int j = from; j < to; j++) {
+                distances[offset++] = norms[i] == 0 || norms[j] == 0 ? 1 : squaredDistance(a, data[j]) / 2;
+            }
+        }
+
+        @Override
+        double[] norms(double[][] data) {
+            return squaredNorms(data);
+        }
+    };
+
+    /**
+     * The squared distance, relative to the squared norms of the rows, below which it is computed again exactly
+     */
+    private static final double CANCELLATION_TOLERANCE = 1e-6;
+
+    /**
+     * Writes the distances from row i to rows [from, to) to {@code distances}, starting at {@code offset}
+     */
+    abstract void row(double[][] data, double[] norms, int i, int from, int to, double[] distances, int offset);
+
+    /**
+     * Returns whatever the kernel precomputes per row
+     */
+    double[] norms(double[][] data) {
+        return null;
+    }
+
+    /**
+     * Returns the kernel for the given metric. Exact kernels compute each distance from the differences of the
+     * rows, rather than from their norms and dot products; the Manhattan and Chebyshev kernels always do.
+     */
+    static DistanceKernel of(Proximity.Metric metric, boolean exact) {
+        switch (metric) {
+            case EUCLIDEAN:
+            case MAHALANOBIS:
+                return exact ? EXACT_EUCLIDEAN : EUCLIDEAN;
+            case MANHATTAN:
+                return MANHATTAN;
+            case CHEBYSHEV:
+                return CHEBYSHEV;
+            case COSINE:
+            case CORRELATION:
+                return exact ? EXACT_ONE_MINUS_DOT : ONE_MINUS_DOT;
+            default:
+                throw new IllegalArgumentException("Unknown metric: " + metric);
+        }
+    }
+
+    /**
+     * Returns the rows transformed for this kernel to compute the given metric
+     */
+    double[][] prepare(double[][] input, Proximity.Metric metric) {
+        switch (metric) {
+            case EUCLIDEAN:
+                // centering leaves the distances unchanged, but makes the cancellation in the norm identity smaller
+                return this == EUCLIDEAN ? centered(input) : input;
+            case MAHALANOBIS:
+                return whitened(centered(input));
+            case COSINE:
+                return normalized(input, false);
+            case CORRELATION:
+                return normalized(input, true);
+            default:
+                return input;
+        }
+    }
+
+    private static double[] squaredNorms(double[][] data) {
+        double[] norms = new double[data.length];
+        for (int i = 0; i < data.length; i++) {
+            norms[i] = dot(data[i], data[i]);
+        }
+        return norms;
+    }
+
+    static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int k = 0; k < a.length; k++) {
+            sum += a[k] * b[k];
+        }
+        return sum;
+    }
+
+    static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int k = 0; k < a.length; k++) {
+            double d = a[k] - b[k];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the rows less the mean row
+     */
+    private static double[][] centered(double[][] input) {
+        int d = input.length == 0 ? 0 : input[0].length;
+        double[] mean = new double[d];
+        for (double[] row : input) {
+            for (int k = 0; k < d; k++) {
+                mean[k] += row[k];
+            }
+        }
+        for (int k = 0; k < d; k++) {
+            mean[k] /= input.length;
+        }
+        double[][] centered = new double[input.length][d];
+        for (int i = 0; i < input.length; i++) {
+            for (int k = 0; k < d; k++) {
+                centered[i][k] = input[i][k] - mean[k];
+            }
+        }
+        return centered;
+    }
+
+    /**
+     * Returns each row scaled to unit length, after subtracting its own mean if {@code center}. Rows of zero length
+     * are left as zeros.
+     */
+    private static double[][] normalized(double[][] input, boolean center) {
+        double[][] normalized = new double[input.length][];
+        for (int i = 0; i < input.length; i++) {
+            double[] row = input[i].clone();
+            if (center) {
+                double mean = 0;
+                for (double value : row) {
+                    mean += value;
+                }
+                mean /= row.length;
+                for (int k = 0; k < row.length; k++) {
+                    row[k] -= mean;
+                }
+            }
+            double norm = Math.sqrt(dot(row, row));
+            if (norm > 0) {
+                for (int k = 0; k < row.length; k++) {
+                    row[k] /= norm;
+                }
+            }
+            normalized[i] = row;
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns the centered rows multiplied by the inverse of the Cholesky factor L of their covariance, so that
+     * the Euclidean distance between the results is the Mahalanobis distance between the rows
+     */
+    private static double[][] whitened(double[][] centered) {
+        int n = centered.length;
+        int d = n == 0 ? 0 : centered[0].length;
+        double[][] covariance = new double[d][d];
+        for (double[] row : centered) {
+            for (int a = 0; a < d; a++) {
+                for (int b = 0; b <= a; b++) {
+                    covariance[a][b] += row[a] * row[b];
+                }
+            }
+        }
+        // the lower triangle of the covariance, overwritten by its Cholesky factor
+        double[][] l = covariance;
+        for (int a = 0; a < d; a++) {
+            for (int b = 0; b <= a; b++) {
+                l[a][b] /= n - 1;
+            }
+        }
+        for (int a = 0; a < d; a++) {
+            for (int b = 0; b <= a; b++) {
+                double sum = l[a][b];
+                for (int k = 0; k < b; k++) {
+                    sum -= l[a][k] * l[b][k];
+                }
+                if (a == b) {
+                    if (sum <= 0) {
+                        throw new IllegalArgumentException(
+                                "The covariance of the columns is singular, so the Mahalanobis distance is undefined");
+                    }
+                    l[a][a] = Math.sqrt(sum);
+                } else {
+                    l[a][b] = sum / l[b][b];
+                }
+            }
+        }
+        double[][] whitened = new double[n][d];
+        for (int i = 0; i < n; i++) {
+            double[] x = centered[i];
+            double[] y = whitened[i];
+            for (int a = 0; a < d; a++) {
+                double sum = x[a];
+                for (int k = 0; k < a; k++) {
+                    sum -= l[a][k] * y[k];
+                }
+                y[a] = sum / l[a][a];
+            }
+        }
+        return whitened;
+    }
+}
@@ -14,46 +14,95 @@
 
 package tech.tablesaw.api.ml.clustering;
 
+import com.google.common.base.Preconditions;
+import smile.stat.distribution.GaussianDistribution;
 import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.NumberColumn;
-import smile.clustering.GMeans;
 import tech.tablesaw.api.Table;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.util.DoubleArrays;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * G-means clustering (Hamerly and Elkan, "Learning the k in k-means", 2003), which grows the number of clusters up
+ * to maxK, splitting each cluster whose rows, projected onto the line between the centroids of its 2-means split,
+ * fail the Anderson-Darling test for normality.
+ *
+ * The split tests of each round run concurrently, see {@link SplittingKmeans}.
+ */
 public class Gmeans {
 
-    private final GMeans model;
+    /**
+     * The critical value of the adjusted Anderson-Darling statistic at a significance level of 0.0001
+     */
+    private static final double CRITICAL_VALUE = 1.8692;
+
+    private final KmeansModel model;
     private final NumberColumn[] inputColumns;
 
     public Gmeans(int maxK, NumberColumn... columns) {
+        this(maxK, new Random().nextLong(), columns);
+    }
+
+    /**
+     * Grows the clusters in the common pool from the given seed, so the same seed gives the same clusters
+     */
+    public Gmeans(int maxK, long seed, NumberColumn... columns) {
+        this(maxK, ForkJoinPool.commonPool(), null, seed, columns);
+    }
+
+    /**
+     * Grows the clusters in the given pool, which bounds the threads used, from the given seed, for about
+     * {@code timeLimit}, after which no more split tests are started and the clusters found so far are kept. The
+     * pool is left running, so it can be reused.
+     *
+     * @param timeLimit the time budget, or null for none
+     */
+    public Gmeans(int maxK, ForkJoinPool pool, Duration timeLimit, long seed, NumberColumn... columns) {
+        Preconditions.checkArgument(maxK >= 2, "maxK must be at least 2: %s", maxK);
         double[][] data = DoubleArrays.to2dArray(columns);
-        this.model = new GMeans(data, maxK);
+        long budget = timeLimit == null ? Long.MAX_VALUE : timeLimit.toNanos();
+        this.model = SplittingKmeans.fit(data, maxK, Gmeans::score, pool, budget, seed);
         this.inputColumns = columns;
     }
 
     public int predict(double[] x) {
-        return model.predict(x);
+        return ParallelKmeans.nearest(model.centroids, x);
+    }
+
+    /**
+     * Returns the cluster of each row of the given columns, which must match the columns the model was built
+     * from. The nearest centroids are found in parallel blocks read straight from the columns, and the result can
+     * be added to the columns' table.
+     */
+    public DoubleColumn assign(NumberColumn... columns) {
+        Preconditions.checkArgument(columns.length == inputColumns.length,
+                "Expected %s columns but got %s", inputColumns.length, columns.length);
+        return DoubleColumn.create("Cluster", ParallelKmeans.nearest(columns, model.centroids));
     }
 
     public double[][] centroids() {
-        return model.centroids();
+        return model.centroids;
     }
 
     public double distortion() {
-        return model.distortion();
+        return model.distortion;
     }
 
     public int getClusterCount() {
-        return model.getNumClusters();
+        return model.centroids.length;
     }
 
     public int[] getClusterLabels() {
-        return model.getClusterLabel();
+        return model.labels;
     }
 
     public int[] getClusterSizes() {
-        return model.getClusterSize();
+        return model.sizes;
     }
 
     public Table labeledCentroids() {
@@ -66,7 +115,7 @@ public class Gmeans {
             table.addColumns(centroid);
         }
 
-        double[][] centroids = model.centroids();
+        double[][] centroids = model.centroids;
 
         for (int i = 0; i < centroids.length; i++) {
             labelColumn.appendCell(String.valueOf(i));
@@ -77,4 +126,66 @@ public class Gmeans {
         }
         return table;
     }
+
+    /**
+     * Returns how far the Anderson-Darling statistic of the rows, projected onto the line between the two
+     * centroids of the split and standardized, exceeds the critical value
+     */
+    private static double score(double[][] rows, double[] centroid, KmeansModel split) {
+        double[] a = split.centroids[0];
+        double[] b = split.centroids[1];
+        double[] v = new double[a.length];
+        double vv = 0;
+        for (int j = 0; j < v.length; j++) {
+            v[j] = a[j] - b[j];
+            vv += v[j] * v[j];
+        }
+        if (vv == 0) {
+            return -1;
+        }
+        int n = rows.length;
+        double[] x = new double[n];
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            double dot = 0;
+            for (int j = 0; j < v.length; j++) {
+                dot += rows[i][j] * v[j];
+            }
+            x[i] = dot / vv;
+            mean += x[i];
+        }
+        mean /= n;
+        double variance = 0;
+        for (double value : x) {
+            variance += (value - mean) * (value - mean);
+        }
+        double sd = Math.sqrt(variance / (n - 1));
+        if (sd == 0) {
+            return -1;
+        }
+        for (int i = 0; i < n; i++) {
+            x[i] = (x[i] - mean) / sd;
+        }
+        return andersonDarling(x) - CRITICAL_VALUE;
+    }
+
+    /**
+     * Returns the Anderson-Darling statistic of standardized values against the standard normal distribution,
+     * adjusted for the estimated mean and variance
+     */
+    private static double andersonDarling(double[] x) {
+        int n = x.length;
+        Arrays.sort(x);
+        GaussianDistribution normal = GaussianDistribution.getInstance();
+        double[] cdf = new double[n];
+        for (int i = 0; i < n; i++) {
+            cdf[i] = Math.min(0.9999999, Math.max(1E-7, normal.cdf(x[i])));
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += (2 * i + 1) * (Math.log(cdf[i]) + Math.log(1 - cdf[n - 1 - i]));
+        }
+        double a = -n - sum / n;
+        return a * (1 + 4.0 / n - 25.0 / ((double) n * n));
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A uniform grid of cells as wide as the search radius, so the points within the radius of a point lie in its own
+ * cell or the cells next to it: 3^d cells in d dimensions. Only the occupied cells are kept, in a hash map, and
+ * the map is only read once built, so it can be searched from many threads at once.
+ */
+final class GridIndex implements Dbscan.RangeIndex {
+
+    /**
+     * The most dimensions for which a grid is built; the number of cells searched grows as 3^d
+     */
+    static final int MAX_DIMENSIONS = 4;
+
+    private final double[][] data;
+    private final double radius;
+    private final double[] origin;
+    private final long[] cells;
+    private final long[] strides;
+    private final Long2ObjectOpenHashMap<int[]> members;
+
+    private GridIndex(double[][] data, double radius, double[] origin, long[] cells, long[] strides) {
+        this.data = data;
+        this.radius = radius;
+        this.origin = origin;
+        this.cells = cells;
+        this.strides = strides;
+
+        Long2ObjectOpenHashMap<IntArrayList> lists = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < data.length; i++) {
+            long key = 0;
+            for (int k = 0; k < origin.length; k++) {
+                key += cell(data[i], k) * strides[k];
+            }
+            IntArrayList list = lists.get(key);
+            if (list == null) {
+                list = new IntArrayList();
+                lists.put(key, list);
+            }
+            list.add(i);
+        }
+        this.members = new Long2ObjectOpenHashMap<>(lists.size());
+        lists.long2ObjectEntrySet().forEach(entry -> members.put(entry.getLongKey(), entry.getValue().toIntArray()));
+    }
+
+    /**
+     * Returns a grid over the given points, or null if they have more than {@link #MAX_DIMENSIONS} dimensions or
+     * span too many cells to number them in a long
+     */
+    static GridIndex of(double[][] data, double radius) {
+        int d = data.length == 0 ? 0 : data[0].length;
+        if (d == 0 || d > MAX_DIMENSIONS) {
+            return null;
+        }
+        double[] origin = new double[d];
+        double[] max = new double[d];
+        for (int k = 0; k < d; k++) {
+            origin[k] = Double.POSITIVE_INFINITY;
+            max[k] = Double.NEGATIVE_INFINITY;
+        }
+        for (double[] x : data) {
+            for (int k = 0; k < d; k++) {
+                origin[k] = Math.min(origin[k], x[k]);
+                max[k] = Math.max(max[k], x[k]);
+            }
+        }
+        long[] cells = new long[d];
+        long[] strides = new long[d];
+        long stride = 1;
+        try {
+            for (int k = 0; k < d; k++) {
+                double span = Math.floor((max[k] - origin[k]) / radius) + 1;
+                if (!(span < Long.MAX_VALUE)) {
+                    return null;
+                }
+                cells[k] = (long) span;
+                strides[k] = stride;
+                stride = Math.multiplyExact(stride, cells[k]);
+            }
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        return new GridIndex(data, radius, origin, cells, strides);
+    }
+
+    @Override
+    public void range(double[] x, IntConsumer neighbor) {
+        int d = origin.length;
+        double squaredRadius = radius * radius;
+        // the lowest and highest cell searched in each dimension, clipped to the grid
+        long[] low = new long[d];
+        long[] high = new long[d];
+        for (int k = 0; k < d; k++) {
+            double cell = Math.floor((x[k] - origin[k]) / radius);
+            if (cell + 1 < 0 || cell - 1 >= cells[k]) {
+                return;
+            }
+            low[k] = Math.max(0, (long) cell - 1);
+            high[k] = Math.min(cells[k] - 1, (long) cell + 1);
+        }
+        long[] cell = low.clone();
+        while (true) {
+            long key = 0;
+            for (int k = 0; k < d; k++) {
+                key += cell[k] * strides[k];
+            }
+            int[] points = members.get(key);
+            if (points != null) {
+                for (int j : points) {
+                    if (DistanceKernel.squaredDistance(x, data[j]) <= squaredRadius) {
+                        neighbor.accept(j);
+                    }
+                }
+            }
+            // the next cell, in odometer order
+            int k = 0;
+            while (k < d && cell[k] == high[k]) {
+                cell[k] = low[k];
+                k++;
+            }
+            if (k == d) {
+                return;
+            }
+            cell[k]++;
+        }
+    }
+
+    private long cell(double[] x, int k) {
+        return (long) ((x[k] - origin[k]) / radius);
+    }
+}
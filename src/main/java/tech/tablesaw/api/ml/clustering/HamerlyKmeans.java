@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import java.util.stream.IntStream;
+
+/**
+ * Lloyd's algorithm accelerated by Hamerly's triangle inequality bounds ("Making k-means even faster", 2010).
+ *
+ * Each row keeps an upper bound on the distance to its own centroid and a lower bound on the distance to every
+ * other centroid. When the centroids move, the bounds are loosened by how far they moved, and a row whose upper
+ * bound is still below its lower bound, or below half the distance from its centroid to the nearest other one,
+ * cannot have changed cluster and is skipped. Late in a run, when the centroids barely move, almost every row is
+ * skipped. The rows that are not skipped are handled in parallel blocks, as in {@link ParallelKmeans}.
+ */
+final class HamerlyKmeans {
+
+    private HamerlyKmeans() {
+    }
+
+    static KmeansModel fit(double[][] data, double[][] initialCentroids, int maxIterations) {
+        int n = data.length;
+        int k = initialCentroids.length;
+        double[][] centroids = ParallelKmeans.copy(initialCentroids);
+        int[] labels = new int[n];
+        double[] upper = new double[n];
+        double[] lower = new double[n];
+        double[] halfSeparation = new double[k];
+        double[] moved = new double[k];
+
+        ParallelKmeans.Sums sums = pass(data, centroids, labels, upper, lower, null, true);
+        for (int iteration = 0; iteration < maxIterations && sums.changed > 0; iteration++) {
+            double[][] previous = ParallelKmeans.copy(centroids);
+            sums.updateCentroids(centroids);
+
+            int farthest = 0;
+            for (int c = 0; c < k; c++) {
+                moved[c] = Math.sqrt(ParallelKmeans.squaredDistance(previous[c], centroids[c]));
+                if (moved[c] > moved[farthest]) {
+                    farthest = c;
+                }
+            }
+            double secondFarthest = 0;
+            for (int c = 0; c < k; c++) {
+                if (c != farthest) {
+                    secondFarthest = Math.max(secondFarthest, moved[c]);
+                }
+            }
+            double maxMove = moved[farthest];
+            double otherMove = secondFarthest;
+            int farthestCluster = farthest;
+            IntStream.range(0, ParallelKmeans.blockCount(n)).parallel().forEach(block -> {
+                int to = Math.min(n, (block + 1) * ParallelKmeans.BLOCK_SIZE);
+                for (int row = block * ParallelKmeans.BLOCK_SIZE; row < to; row++) {
+                    int label = labels[row];
+                    upper[row] += moved[label];
+                    lower[row] -= label == farthestCluster ? otherMove : maxMove;
+                }
+            });
+
+            for (int c = 0; c < k; c++) {
+                double nearest = Double.MAX_VALUE;
+                for (int other = 0; other < k; other++) {
+                    if (other != c) {
+                        nearest = Math.min(nearest, ParallelKmeans.squaredDistance(centroids[c], centroids[other]));
+                    }
+                }
+                halfSeparation[c] = Math.sqrt(nearest) / 2;
+            }
+
+            sums = pass(data, centroids, labels, upper, lower, halfSeparation, false);
+        }
+
+        // the bounds aren't exact distances, so the distortion takes one more pass
+        int[] sizes = sums.count;
+        double distortion = IntStream.range(0, ParallelKmeans.blockCount(n)).parallel().mapToDouble(block -> {
+            double total = 0;
+            int to = Math.min(n, (block + 1) * ParallelKmeans.BLOCK_SIZE);
+            for (int row = block * ParallelKmeans.BLOCK_SIZE; row < to; row++) {
+                total += ParallelKmeans.squaredDistance(data[row], centroids[labels[row]]);
+            }
+            return total;
+        }).sum();
+        return new KmeansModel(centroids, labels, sizes, distortion);
+    }
+
+    /**
+     * Assigns the rows that the bounds can't rule out, in parallel, and sums every row into its cluster
+     *
+     * @param all whether to assign every row, ignoring the bounds, as on the first pass
+     */
+    private static ParallelKmeans.Sums pass(double[][] data,
+                                            double[][] centroids,
+                                            int[] labels,
+                                            double[] upper,
+                                            double[] lower,
+                                            double[] halfSeparation,
+                                            boolean all) {
+        int n = data.length;
+        int k = centroids.length;
+        int d = centroids[0].length;
+        return IntStream.range(0, ParallelKmeans.blockCount(n)).parallel().collect(
+                () -> new ParallelKmeans.Sums(k, d),
+                (sums, block) -> {
+                    int to = Math.min(n, (block + 1) * ParallelKmeans.BLOCK_SIZE);
+                    for (int row = block * ParallelKmeans.BLOCK_SIZE; row < to; row++) {
+                        double[] x = data[row];
+                        if (!all) {
+                            int label = labels[row];
+                            double bound = Math.max(halfSeparation[label], lower[row]);
+                            if (upper[row] > bound) {
+                                // tighten the upper bound to the exact distance, and test again
+                                upper[row] = Math.sqrt(ParallelKmeans.squaredDistance(x, centroids[label]));
+                            }
+                            if (upper[row] <= bound) {
+                                sums.add(label, x);
+                                continue;
+                            }
+                        }
+                        int best = -1;
+                        double bestDistance = Double.MAX_VALUE;
+                        double secondDistance = Double.MAX_VALUE;
+                        for (int c = 0; c < k; c++) {
+                            double distance = ParallelKmeans.squaredDistance(centroids[c], x);
+                            if (distance < bestDistance) {
+                                secondDistance = bestDistance;
+                                bestDistance = distance;
+                                best = c;
+                            } else if (distance < secondDistance) {
+                                secondDistance = distance;
+                            }
+                        }
+                        if (labels[row] != best || all) {
+                            labels[row] = best;
+                            sums.changed++;
+                        }
+                        upper[row] = Math.sqrt(bestDistance);
+                        lower[row] = Math.sqrt(secondDistance);
+                        sums.add(best, x);
+                    }
+                },
+                ParallelKmeans.Sums::merge);
+    }
+}
@@ -1,7 +1,14 @@
 package tech.tablesaw.api.ml.clustering;
 
+import com.google.common.base.Preconditions;
 import smile.clustering.linkage.Linkage;
+import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.util.DoubleArrays;
+
+import java.util.Random;
+import java.util.stream.IntStream;
 
 /**
  * Agglomerative Hierarchical Clustering. Hierarchical agglomerative clustering
@@ -34,7 +41,20 @@ import tech.tablesaw.api.NumberColumn;
  */
 public class HierarchicalClustering {
 
-    private final smile.clustering.HierarchicalClustering hclust;
+    /**
+     * The number of distances computed by a single task when SLINK computes a row of them in parallel
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    /**
+     * The number of mini-batch k-means iterations that summarize the observations into micro-clusters
+     */
+    private static final int MICRO_CLUSTER_ITERATIONS = 100;
+
+    private final Dendrogram dendrogram;
+
+    // the micro-cluster of each observation, when the tree is of micro-clusters rather than observations
+    private final int[] microClusters;
 
     /**
      * Constructor.
@@ -45,16 +65,194 @@ public class HierarchicalClustering {
      * describing each observations
      */
     public HierarchicalClustering(LinkageFactory.type linkageType, NumberColumn... columns) {
-        Proximity proximity = new Proximity(columns);
-        Linkage linkage = new LinkageFactory().createLinkage(proximity.getMatrix(), linkageType);
-        this.hclust = new smile.clustering.HierarchicalClustering(linkage);
+        this(linkageType, Proximity.Precision.DOUBLE, columns);
     }
-    
+
+    /**
+     * Constructor.
+     *
+     * @param linkageType the type of dissimilarity measure you would like
+     * to use when determining which clusters to merge
+     * @param precision the precision in which the proximity matrix is stored;
+     * FLOAT halves its memory
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     */
+    public HierarchicalClustering(LinkageFactory.type linkageType, Proximity.Precision precision,
+                                  NumberColumn... columns) {
+        this(linkageType, Proximity.Metric.EUCLIDEAN, precision, columns);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param linkageType the type of dissimilarity measure you would like
+     * to use when determining which clusters to merge
+     * @param metric the measure of dissimilarity between observations. Ward's
+     * and the centroid linkages need Euclidean distances.
+     * @param precision the precision in which the proximity matrix is stored;
+     * FLOAT halves its memory. SINGLE_SLINK and WARD_NN_CHAIN store no matrix.
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     */
+    public HierarchicalClustering(LinkageFactory.type linkageType, Proximity.Metric metric,
+                                  Proximity.Precision precision, NumberColumn... columns) {
+        this(fit(linkageType, metric, precision, columns), null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param linkageType the type of dissimilarity measure you would like
+     * to use when determining which clusters to merge
+     * @param proximity the dissimilarities between the observations, such as
+     * a matrix in a memory-mapped file. The linkage updates it in place, so
+     * pass a {@link Proximity#copy(java.nio.file.Path) copy} of a matrix that
+     * will be clustered again.
+     */
+    public HierarchicalClustering(LinkageFactory.type linkageType, Proximity proximity) {
+        this(fit(linkageType, proximity, null), null);
+    }
+
+    private HierarchicalClustering(Dendrogram dendrogram, int[] microClusters) {
+        this.dendrogram = dendrogram;
+        this.microClusters = microClusters;
+    }
+
+    /**
+     * Approximates the clustering of a large number of observations. They
+     * are first summarized into micro-clusters by mini-batch k-means, which
+     * reads the columns directly; the linkage then clusters the centroids of
+     * the micro-clusters, and each observation is put in the cluster of its
+     * micro-cluster. Memory is bounded by the number of micro-clusters rather
+     * than the number of observations.
+     * <p>
+     * The tree is an approximation of the tree of the observations. Ward's
+     * dissimilarity follows from the centroids and sizes of the clusters
+     * alone, so Ward's linkage gives the tree that would result from merging
+     * each micro-cluster first. The average (UPGMA) and centroid (UPGMC)
+     * linkages weight each micro-cluster by the number of observations in it
+     * as clusters merge, but start from the distances between the centroids
+     * rather than between the observations, and the other linkages measure
+     * the distances between the centroids alone.
+     * {@link #getTree()} and {@link #getHeight()} describe the tree of
+     * micro-clusters, and the Euclidean distance is used throughout.
+     *
+     * @param linkageType the type of dissimilarity measure you would like
+     * to use when determining which clusters to merge
+     * @param microClusters the number of micro-clusters, typically a few
+     * thousand; empty ones are dropped
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     */
+    public static HierarchicalClustering approximate(LinkageFactory.type linkageType, int microClusters,
+                                                     NumberColumn... columns) {
+        return approximate(linkageType, microClusters, new Random().nextLong(), columns);
+    }
+
+    /**
+     * Approximates the clustering of a large number of observations, as
+     * {@link #approximate(LinkageFactory.type, int, NumberColumn...)} does,
+     * sampling the batches of the mini-batch k-means from the given seed, so
+     * the same seed gives the same clusters.
+     */
+    public static HierarchicalClustering approximate(LinkageFactory.type linkageType, int microClusters,
+                                                     long seed, NumberColumn... columns) {
+        int n = columns[0].size();
+        Preconditions.checkArgument(microClusters >= 2 && microClusters <= n,
+                "The number of micro-clusters must be between 2 and the number of rows: %s", microClusters);
+        KmeansModel summary = MiniBatchKmeans.fit(columns, microClusters, Math.max(1024, 4 * microClusters),
+                MICRO_CLUSTER_ITERATIONS, 1e-4, 0.0, seed);
+
+        // drop the empty micro-clusters, renumbering the others
+        int[] renumbered = new int[microClusters];
+        int count = 0;
+        for (int c = 0; c < microClusters; c++) {
+            renumbered[c] = summary.sizes[c] > 0 ? count++ : -1;
+        }
+        double[][] centroids = new double[count][];
+        int[] sizes = new int[count];
+        for (int c = 0; c < microClusters; c++) {
+            if (renumbered[c] >= 0) {
+                centroids[renumbered[c]] = summary.centroids[c];
+                sizes[renumbered[c]] = summary.sizes[c];
+            }
+        }
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            labels[i] = renumbered[summary.labels[i]];
+        }
+
+        Dendrogram dendrogram = LinkageFactory.linkage(linkageType) == LinkageFactory.type.WARD
+                ? NearestNeighborChain.fit(count, new NearestNeighborChain.Ward(centroids, sizes))
+                : fit(linkageType, new Proximity(centroids), sizes);
+        return new HierarchicalClustering(dendrogram, labels);
+    }
+
+    private static Dendrogram fit(LinkageFactory.type linkageType, Proximity.Metric metric,
+                                  Proximity.Precision precision, NumberColumn... columns) {
+        // Ward's and the centroid linkages update the dissimilarities as distances between centroids
+        LinkageFactory.type linkage = LinkageFactory.linkage(linkageType);
+        Preconditions.checkArgument(metric == Proximity.Metric.EUCLIDEAN || (linkage != LinkageFactory.type.WARD
+                        && linkage != LinkageFactory.type.UPGMC && linkage != LinkageFactory.type.WPGMC),
+                "%s linkage needs Euclidean distances, not %s", linkageType, metric);
+        switch (linkageType) {
+            case SINGLE_SLINK: {
+                // the distances are computed a row at a time, so no matrix is needed
+                DistanceKernel kernel = DistanceKernel.of(metric, false);
+                double[][] data = kernel.prepare(DoubleArrays.to2dArray(columns), metric);
+                double[] norms = kernel.norms(data);
+                return Slink.fit(data.length, (i, distances) ->
+                        IntStream.range(0, (i + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel().forEach(block -> {
+                            int from = block * BLOCK_SIZE;
+                            kernel.row(data, norms, i, from, Math.min(i, from + BLOCK_SIZE), distances, from);
+                        }));
+            }
+            case WARD_NN_CHAIN: {
+                // Ward's dissimilarity follows from the centroids, so no matrix is needed
+                double[][] data = DoubleArrays.to2dArray(columns);
+                return NearestNeighborChain.fit(data.length, new NearestNeighborChain.Ward(data));
+            }
+            default:
+                return fit(linkageType, new Proximity(metric, precision, columns), null);
+        }
+    }
+
+    /**
+     * @param sizes the sizes of the clusters the proximity matrix starts from, or null for single observations
+     */
+    private static Dendrogram fit(LinkageFactory.type linkageType, Proximity proximity, int[] sizes) {
+        int n = proximity.size();
+        switch (linkageType) {
+            case SINGLE_SLINK:
+                return Slink.fit(n, (i, distances) -> {
+                    for (int j = 0; j < i; j++) {
+                        distances[j] = proximity.get(i, j);
+                    }
+                });
+            case COMPLETE_NN_CHAIN:
+            case UPGMA_NN_CHAIN:
+            case WARD_NN_CHAIN:
+                return NearestNeighborChain.fit(n, NearestNeighborChain.of(linkage(linkageType, proximity, sizes)));
+            default: {
+                Linkage linkage = linkage(linkageType, proximity, sizes);
+                smile.clustering.HierarchicalClustering hclust = new smile.clustering.HierarchicalClustering(linkage);
+                return new Dendrogram(hclust.getTree(), hclust.getHeight());
+            }
+        }
+    }
+
+    private static Linkage linkage(LinkageFactory.type linkageType, Proximity proximity, int[] sizes) {
+        return sizes == null
+                ? new LinkageFactory().createLinkage(proximity, linkageType)
+                : new ProximityLinkage(proximity, LinkageFactory.linkage(linkageType), sizes);
+    }
+
     public int[][] getTree() {
-        return hclust.getTree();
+        return dendrogram.merge;
     } 
     public double[] getHeight() {
-        return hclust.getHeight();
+        return dendrogram.height;
     }
     
     /**
@@ -67,7 +265,7 @@ public class HierarchicalClustering {
      */
     public int[] partition(int k) {
         // given number of desired clusters, returns clusters
-        return hclust.partition(k);
+        return expand(dendrogram.partition(k));
     }    
     /**
      * Cluster a set of observations based on a given height to cut a dendrogram
@@ -79,7 +277,63 @@ public class HierarchicalClustering {
      */
     public int[] partition(double h) {
         // given height to cut tree at, returns clusters
-        return hclust.partition(h);
+        return expand(dendrogram.partition(h));
     } 
 
+    /**
+     * Cluster a set of observations into each number of clusters in a range,
+     * in one pass over the dendrogram tree.
+     *
+     * @param minK the fewest clusters, at least 2
+     * @param maxK the most clusters, at most the number of leaves of the tree
+     *
+     * @return a table with a column of cluster memberships, named "k=" and the
+     * number of clusters, for each number of clusters from minK to maxK; each
+     * column holds the memberships {@link #partition(int)} returns
+     */
+    public Table partitions(int minK, int maxK) {
+        int n = dendrogram.merge.length + 1;
+        Preconditions.checkArgument(2 <= minK && minK <= maxK && maxK <= n,
+                "Expected 2 <= minK <= maxK <= %s, but got minK = %s and maxK = %s", n, minK, maxK);
+        int[] ks = IntStream.rangeClosed(minK, maxK).toArray();
+        int[][] memberships = dendrogram.partitions(ks);
+        Table table = Table.create("Partitions");
+        for (int cut = 0; cut < ks.length; cut++) {
+            table.addColumns(DoubleColumn.create("k=" + ks[cut], expand(memberships[cut])));
+        }
+        return table;
+    }
+
+    /**
+     * Cluster a set of observations by cutting the dendrogram tree at each of
+     * the given heights, in one pass over the tree.
+     *
+     * @param heights the heights at which the tree is cut
+     *
+     * @return a table with a column of cluster memberships, named "h=" and the
+     * height, for each height; each column holds the memberships
+     * {@link #partition(double)} returns
+     */
+    public Table partitionsAtHeights(double... heights) {
+        int[][] memberships = dendrogram.partitions(heights);
+        Table table = Table.create("Partitions");
+        for (int cut = 0; cut < heights.length; cut++) {
+            table.addColumns(DoubleColumn.create("h=" + heights[cut], expand(memberships[cut])));
+        }
+        return table;
+    }
+
+    /**
+     * Returns the memberships of the observations, given those of the leaves of the tree
+     */
+    private int[] expand(int[] membership) {
+        if (microClusters == null) {
+            return membership;
+        }
+        int[] expanded = new int[microClusters.length];
+        for (int i = 0; i < expanded.length; i++) {
+            expanded[i] = membership[microClusters[i]];
+        }
+        return expanded;
+    }
 }
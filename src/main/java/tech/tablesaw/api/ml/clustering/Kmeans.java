@@ -14,6 +14,7 @@
 
 package tech.tablesaw.api.ml.clustering;
 
+import com.google.common.base.Preconditions;
 import smile.clustering.KMeans;
 import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.NumberColumn;
@@ -22,48 +23,323 @@ import tech.tablesaw.columns.Column;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.util.DoubleArrays;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
 /**
  * K-Means clustering
  */
 public class Kmeans {
 
-    private final KMeans kMeans;
+    /**
+     * The algorithm used to find the clusters
+     */
+    public enum Algorithm {
+        /**
+         * Smile's filtering algorithm over a BBD tree, seeded by k-means++. Single-threaded. Smile draws the
+         * k-means++ seeds from its own random number generator, so this algorithm ignores the seed given to a
+         * constructor: its restarts still differ from each other, but a seeded model is not reproducible.
+         */
+        BBD_TREE,
+        /**
+         * Lloyd's algorithm with parallel assignment and update steps, seeded by k-means||. Scales with the number
+         * of cores, and suits large k.
+         */
+        LLOYD,
+        /**
+         * Parallel Lloyd's algorithm, seeded by k-means||, that uses Hamerly's triangle inequality bounds to skip
+         * the distance computations for rows that can't have changed cluster. Gives the same result as LLOYD from
+         * the same seeds, and is usually much faster when k is large.
+         */
+        HAMERLY
+    }
+
+    private static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    /**
+     * The relative rise in the mean distortion of the rows added since the last full clustering above which
+     * {@link #update(NumberColumn...)} reclusters every row
+     */
+    public static final double DEFAULT_DRIFT_THRESHOLD = 0.2;
+
     private final NumberColumn[] inputColumns;
+    private final Algorithm algorithm;
+    private final int maxIterations;
+    // draws the seed of each full clustering after the first
+    private final Random random;
+
+    // the columns clustered so far: the input columns, then the rows of each update
+    private final List<NumberColumn[]> batches = new ArrayList<>();
+
+    private double[][] centroids;
+    private int[] labels;
+    private int[] sizes;
+    private double distortion;
+
+    // the sum of the rows in each cluster, made when the first update needs it
+    private double[][] sums;
+
+    // the mean distortion of a row at the last full clustering, and the distortion and count of the rows added since
+    private double baseline;
+    private double addedDistortion;
+    private long addedRows;
 
     public Kmeans(int k, NumberColumn... columns) {
-        double[][] input = DoubleArrays.to2dArray(columns);
-        this.kMeans = new KMeans(input, k);
-        this.inputColumns = columns;
+        this(k, DEFAULT_MAX_ITERATIONS, Algorithm.BBD_TREE, columns);
     }
 
     public Kmeans(int k, int maxIterations, NumberColumn... columns) {
-        double[][] input = DoubleArrays.to2dArray(columns);
-        this.kMeans = new KMeans(input, k, maxIterations);
+        this(k, maxIterations, Algorithm.BBD_TREE, columns);
+    }
+
+    public Kmeans(int k, int maxIterations, Algorithm algorithm, NumberColumn... columns) {
+        this(k, maxIterations, algorithm, 1, columns);
+    }
+
+    /**
+     * Runs k-means {@code restarts} times from different random seeds, concurrently, and keeps the run with the
+     * lowest distortion. All the runs share a single copy of the data, and a run's labels are dropped as soon as a
+     * better run finishes, so only the best model is retained.
+     */
+    public Kmeans(int k, int maxIterations, Algorithm algorithm, int restarts, NumberColumn... columns) {
+        this(k, maxIterations, algorithm, restarts, new Random().nextLong(), columns);
+    }
+
+    /**
+     * Runs k-means {@code restarts} times, as {@link #Kmeans(int, int, Algorithm, int, NumberColumn...)} does,
+     * from the given seed: the i-th run is seeded with {@code seed + i}, so it finds the same clusters as a single
+     * run from that seed, and the same seed gives the same model. The seeds of any later reclustering in
+     * {@link #update(double, NumberColumn...)} are drawn from it too. {@link Algorithm#BBD_TREE} ignores the seed,
+     * since smile's k-means draws from its own random number generator.
+     */
+    public Kmeans(int k, int maxIterations, Algorithm algorithm, int restarts, long seed, NumberColumn... columns) {
+        this(columns, algorithm, maxIterations, new Random(seed),
+                fit(k, maxIterations, algorithm, restarts, seed, columns));
+    }
+
+    private Kmeans(NumberColumn[] columns, Algorithm algorithm, int maxIterations, Random random,
+                   KmeansModel model) {
         this.inputColumns = columns;
+        this.algorithm = algorithm;
+        this.maxIterations = maxIterations;
+        this.random = random;
+        this.batches.add(columns);
+        setModel(model);
+    }
+
+    private void setModel(KmeansModel model) {
+        this.centroids = model.centroids;
+        this.labels = model.labels;
+        this.sizes = model.sizes;
+        this.distortion = model.distortion;
+        this.sums = null;
+        this.baseline = model.distortion / model.labels.length;
+        this.addedDistortion = 0;
+        this.addedRows = 0;
+    }
+
+    private static KmeansModel fit(int k, int maxIterations, Algorithm algorithm, int restarts, long seed,
+                                   NumberColumn... columns) {
+        Preconditions.checkArgument(restarts > 0, "The number of restarts must be positive: %s", restarts);
+        double[][] input = DoubleArrays.to2dArray(columns);
+        if (restarts == 1) {
+            return fit(input, k, maxIterations, algorithm, seed);
+        }
+        // ties go to the earliest run, so the result doesn't depend on which run finishes first
+        return IntStream.range(0, restarts).parallel()
+                .mapToObj(run -> fit(input, k, maxIterations, algorithm, seed + run))
+                .reduce((a, b) -> a.distortion <= b.distortion ? a : b)
+                .get();
+    }
+
+    private static KmeansModel fit(double[][] input, int k, int maxIterations, Algorithm algorithm, long seed) {
+        switch (algorithm) {
+            case BBD_TREE: {
+                KMeans kMeans = new KMeans(input, k, maxIterations);
+                return new KmeansModel(kMeans.centroids(), kMeans.getClusterLabel(), kMeans.getClusterSize(),
+                        kMeans.distortion());
+            }
+            case LLOYD:
+                return ParallelKmeans.lloyd(input, ParallelKmeans.seed(input, k, seed), maxIterations);
+            case HAMERLY:
+                return HamerlyKmeans.fit(input, ParallelKmeans.seed(input, k, seed), maxIterations);
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * Clusters the rows by mini-batch k-means, which samples small batches of rows directly from the columns
+     * rather than passing over all of them each iteration. Much faster than the full algorithms on very large
+     * tables, at the cost of a somewhat higher distortion.
+     *
+     * @param batchSize     the number of rows sampled per iteration, typically a few hundred to a few thousand
+     * @param maxIterations the maximum number of batches
+     */
+    public static Kmeans miniBatch(int k, int batchSize, int maxIterations, NumberColumn... columns) {
+        return miniBatch(k, batchSize, maxIterations, 1e-4, 0.0, new Random().nextLong(), columns);
+    }
+
+    /**
+     * Clusters the rows by mini-batch k-means, as {@link #miniBatch(int, int, int, NumberColumn...)} does, sampling
+     * the batches from the given seed
+     */
+    public static Kmeans miniBatch(int k, int batchSize, int maxIterations, long seed, NumberColumn... columns) {
+        return miniBatch(k, batchSize, maxIterations, 1e-4, 0.0, seed, columns);
+    }
+
+    /**
+     * Clusters the rows by mini-batch k-means, which samples small batches of rows directly from the columns
+     * rather than passing over all of them each iteration.
+     *
+     * Each centroid moves towards the rows assigned to it at a learning rate of 1 / (the number of rows assigned
+     * to it so far), which makes it the running mean of those rows. A positive {@code minLearningRate} floors the
+     * rate, so the centroids keep following the most recent batches.
+     *
+     * Iteration stops after {@code maxIterations} batches, when no centroid moves by more than
+     * {@code tolerance} times the mean squared distance of a row from its centroid, or when the smoothed
+     * distortion of the batches stops improving.
+     *
+     * The batches are sampled from the given seed, so the same seed gives the same model.
+     */
+    public static Kmeans miniBatch(int k,
+                                   int batchSize,
+                                   int maxIterations,
+                                   double tolerance,
+                                   double minLearningRate,
+                                   long seed,
+                                   NumberColumn... columns) {
+        Preconditions.checkArgument(k > 0 && k <= columns[0].size(),
+                "k must be between 1 and the number of rows: %s", k);
+        Preconditions.checkArgument(batchSize > 0, "The batch size must be positive: %s", batchSize);
+        Preconditions.checkArgument(minLearningRate >= 0 && minLearningRate <= 1,
+                "The minimum learning rate must be in [0, 1]: %s", minLearningRate);
+        KmeansModel model = MiniBatchKmeans.fit(columns, k, batchSize, maxIterations, tolerance, minLearningRate,
+                seed);
+        // the rows are reclustered by Lloyd's algorithm if updates drift too far
+        return new Kmeans(columns, Algorithm.LLOYD, DEFAULT_MAX_ITERATIONS, new Random(seed), model);
+    }
+
+    /**
+     * Adds rows to the model without reclustering, as {@link #update(double, NumberColumn...)} does, with a drift
+     * threshold of {@link #DEFAULT_DRIFT_THRESHOLD}
+     */
+    public boolean update(NumberColumn... newRows) {
+        return update(DEFAULT_DRIFT_THRESHOLD, newRows);
+    }
+
+    /**
+     * Adds rows to the model. The new rows are assigned to their nearest centroids, in parallel, and each
+     * centroid moves to the mean of all its rows, kept as a running sum, so the cost is one pass over the new
+     * rows. The rows clustered earlier keep their labels.
+     *
+     * Once the mean distortion of the rows added since the last full clustering rises more than
+     * {@code driftThreshold} above that of the rows clustered then, which happens as the new rows move away from
+     * the clusters, every row is clustered again from scratch, with the algorithm and iteration limit this model
+     * was built with (Lloyd's algorithm for a mini-batch model).
+     *
+     * The labels are in the order of the input rows followed by the rows of each update, and the columns are read
+     * again when reclustering, so they shouldn't be changed in the meantime. The arrays returned by the getters
+     * before an update are not changed by it. Not thread-safe.
+     *
+     * @param newRows a column for each of the input columns, in the same order
+     * @return true if every row was clustered again
+     */
+    public boolean update(double driftThreshold, NumberColumn... newRows) {
+        Preconditions.checkArgument(newRows.length == inputColumns.length,
+                "Expected %s columns but got %s", inputColumns.length, newRows.length);
+        int n = newRows[0].size();
+        if (n == 0) {
+            return false;
+        }
+        int k = centroids.length;
+        int d = inputColumns.length;
+        if (sums == null) {
+            sums = new double[k][d];
+            for (int c = 0; c < k; c++) {
+                for (int j = 0; j < d; j++) {
+                    sums[c][j] = centroids[c][j] * sizes[c];
+                }
+            }
+        }
+
+        int[] newLabels = new int[n];
+        ParallelKmeans.Sums added = ParallelKmeans.assign(newRows, centroids, newLabels, true);
+        batches.add(newRows);
+        int[] allLabels = Arrays.copyOf(labels, labels.length + n);
+        System.arraycopy(newLabels, 0, allLabels, labels.length, n);
+        labels = allLabels;
+        // the arrays already handed out by the getters, which may be smile's own, are left as they were
+        sizes = sizes.clone();
+        centroids = ParallelKmeans.copy(centroids);
+        for (int c = 0; c < k; c++) {
+            if (added.count[c] > 0) {
+                sizes[c] += added.count[c];
+                for (int j = 0; j < d; j++) {
+                    sums[c][j] += added.sum[c][j];
+                    centroids[c][j] = sums[c][j] / sizes[c];
+                }
+            }
+        }
+        // measured against the centroids before they moved; exact again after the next full clustering
+        distortion += added.distortion;
+
+        addedDistortion += added.distortion;
+        addedRows += n;
+        if (addedDistortion / addedRows <= baseline * (1 + driftThreshold)) {
+            return false;
+        }
+        recluster();
+        return true;
+    }
+
+    private void recluster() {
+        double[][] input = new double[labels.length][];
+        int row = 0;
+        for (NumberColumn[] batch : batches) {
+            for (double[] x : DoubleArrays.to2dArray(batch)) {
+                input[row++] = x;
+            }
+        }
+        setModel(fit(input, centroids.length, maxIterations, algorithm, random.nextLong()));
     }
 
     public int predict(double[] x) {
-        return kMeans.predict(x);
+        return ParallelKmeans.nearest(centroids, x);
+    }
+
+    /**
+     * Returns the cluster of each row of the given columns, which must match the columns the model was built
+     * from. The nearest centroids are found in parallel blocks read straight from the columns, and the result can
+     * be added to the columns' table.
+     */
+    public DoubleColumn assign(NumberColumn... columns) {
+        Preconditions.checkArgument(columns.length == inputColumns.length,
+                "Expected %s columns but got %s", inputColumns.length, columns.length);
+        return DoubleColumn.create("Cluster", ParallelKmeans.nearest(columns, centroids));
     }
 
     public double[][] centroids() {
-        return kMeans.centroids();
+        return centroids;
     }
 
     public double distortion() {
-        return kMeans.distortion();
+        return distortion;
     }
 
     public int getClusterCount() {
-        return kMeans.getNumClusters();
+        return centroids.length;
     }
 
     public int[] getClusterLabels() {
-        return kMeans.getClusterLabel();
+        return labels;
     }
 
     public int[] getClusterSizes() {
-        return kMeans.getClusterSize();
+        return sizes;
     }
 
     public Table clustered(Column labels) {
@@ -71,7 +347,7 @@ public class Kmeans {
         StringColumn labelColumn = StringColumn.create("Label");
         NumberColumn clusterColumn = DoubleColumn.create("Cluster");
         table.addColumns(labelColumn, clusterColumn);
-        int[] clusters = kMeans.getClusterLabel();
+        int[] clusters = this.labels;
         for (int i = 0; i < clusters.length; i++) {
             labelColumn.appendCell(labels.getString(i));
             clusterColumn.append(clusters[i]);
@@ -90,8 +366,6 @@ public class Kmeans {
             table.addColumns(centroid);
         }
 
-        double[][] centroids = kMeans.centroids();
-
         for (int i = 0; i < centroids.length; i++) {
             labelColumn.appendCell(String.valueOf(i));
             double[] values = centroids[i];
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+/**
+ * The result of a k-means run: the centroids, the cluster of each row, the size of each cluster, and the sum of
+ * squared distances from each row to its centroid
+ */
+final class KmeansModel {
+
+    final double[][] centroids;
+    final int[] labels;
+    final int[] sizes;
+    final double distortion;
+
+    KmeansModel(double[][] centroids, int[] labels, int[] sizes, double distortion) {
+        this.centroids = centroids;
+        this.labels = labels;
+        this.sizes = sizes;
+        this.distortion = distortion;
+    }
+}
@@ -33,10 +33,33 @@ public class LinkageFactory {
     
     
     /**
-     * Cluster dissimilarity measure
+     * Cluster dissimilarity measure. The types ending in SLINK and NN_CHAIN
+     * measure dissimilarity as the type they are named after does, but make
+     * {@link HierarchicalClustering} use a faster algorithm: SLINK for single
+     * linkage, in O(n) memory, and the nearest-neighbor chain for the others,
+     * which for Ward's linkage also needs no proximity matrix.
      */
     public enum type {
-        COMPLETE, SINGLE, UPGMA, UPGMC, WARD, WPGMA, WPGMC
+        COMPLETE, SINGLE, UPGMA, UPGMC, WARD, WPGMA, WPGMC,
+        SINGLE_SLINK, COMPLETE_NN_CHAIN, UPGMA_NN_CHAIN, WARD_NN_CHAIN
+    }
+
+    /**
+     * Returns the type whose dissimilarity measure the given type uses
+     */
+    static type linkage(type linkageType) {
+        switch (linkageType) {
+            case SINGLE_SLINK:
+                return type.SINGLE;
+            case COMPLETE_NN_CHAIN:
+                return type.COMPLETE;
+            case UPGMA_NN_CHAIN:
+                return type.UPGMA;
+            case WARD_NN_CHAIN:
+                return type.WARD;
+            default:
+                return linkageType;
+        }
     }
     
     /**
@@ -54,7 +77,7 @@ public class LinkageFactory {
     public Linkage createLinkage(double[][] proximity, type linkageType) {
         
         Linkage link;
-        switch (linkageType) {
+        switch (linkage(linkageType)) {
             case WARD:
                 link = new WardLinkage(proximity);
                 break;
@@ -84,4 +107,21 @@ public class LinkageFactory {
         return link;
     }
 
+    /**
+     * Create a Linkage object that works directly on a condensed proximity
+     * matrix, without copying it.
+     *
+     * @param proximity the proximity matrix to store the measures of
+     * dissimilarity between each pair of observations/rows. The linkage
+     * updates it in place as clusters are merged, so it can be used for a
+     * single clustering only.
+     * @param linkageType the type of dissimilarity measure you would like
+     * to use when determining which clusters to merge
+     *
+     * @return a measure of dissimilarity between clusters
+     */
+    public Linkage createLinkage(Proximity proximity, type linkageType) {
+        return new ProximityLinkage(proximity, linkage(linkageType));
+    }
+
 }
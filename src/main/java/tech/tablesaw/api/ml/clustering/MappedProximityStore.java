@@ -0,0 +1,318 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The entries of a condensed proximity matrix in a memory-mapped file, so the matrix is paged in and out by the
+ * operating system rather than held on heap. The file is mapped in blocks of 2^27 entries.
+ *
+ * The file starts with a 16 byte header: a magic number, the number of observations and the precision of the
+ * entries, which follow in little-endian order.
+ *
+ * A file stays mapped until its store is closed. Truncating a mapped file makes reads of the mapping crash the
+ * JVM, so a file mapped by an open store in this JVM can't be created again.
+ */
+final class MappedProximityStore implements ProximityStore {
+
+    private static final int MAGIC = 0x50524f58;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int BLOCK_BITS = 27;
+
+    private static final long BLOCK_MASK = (1L << BLOCK_BITS) - 1;
+
+    // the files mapped by the open stores, counted once per store
+    private static final Multiset<Path> OPEN = ConcurrentHashMultiset.create();
+
+    private final Path file;
+    private final int rows;
+    private final Proximity.Precision precision;
+    private final long size;
+    // null once closed
+    private MappedByteBuffer[] blocks;
+
+    private MappedProximityStore(Path file, FileChannel channel, int rows, Proximity.Precision precision)
+            throws IOException {
+        this.file = file;
+        this.rows = rows;
+        this.precision = precision;
+        this.size = Proximity.entries(rows);
+        int width = width(precision);
+        int blockCount = (int) ((size + BLOCK_MASK) >>> BLOCK_BITS);
+        this.blocks = new MappedByteBuffer[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            long first = (long) block << BLOCK_BITS;
+            long entries = Math.min(1L << BLOCK_BITS, size - first);
+            blocks[block] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * width,
+                    entries * width);
+            blocks[block].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        OPEN.add(file);
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    private static int width(Proximity.Precision precision) {
+        return precision == Proximity.Precision.FLOAT ? Float.BYTES : Double.BYTES;
+    }
+
+    /**
+     * Throws if an open store maps the file
+     */
+    private static void checkNotOpen(Path file) throws IOException {
+        if (OPEN.contains(key(file))) {
+            throw new IOException(file + " is mapped by an open proximity matrix, which must be closed first");
+        }
+    }
+
+    /**
+     * Creates, or overwrites, a file for the matrix of the given number of observations, filled with zeros
+     *
+     * @throws IOException if the file is mapped by an open store
+     */
+    static MappedProximityStore create(Path file, Proximity.Precision precision, int rows) throws IOException {
+        checkNotOpen(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + Proximity.entries(rows) * width(precision));
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(rows).putInt(precision.ordinal()).putInt(0);
+            header.flip();
+            channel.write(header, 0);
+            return new MappedProximityStore(key(file), channel, rows, precision);
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #create(Path, Proximity.Precision, int)}
+     */
+    static MappedProximityStore open(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a proximity matrix file");
+            }
+            int rows = header.getInt();
+            int precision = header.getInt();
+            if (rows < 0 || precision < 0 || precision >= Proximity.Precision.values().length) {
+                throw new IOException(file + " has a corrupt header");
+            }
+            Proximity.Precision p = Proximity.Precision.values()[precision];
+            if (channel.size() < HEADER_SIZE + Proximity.entries(rows) * width(p)) {
+                throw new IOException(file + " is truncated");
+            }
+            return new MappedProximityStore(key(file), channel, rows, p);
+        }
+    }
+
+    /**
+     * Copies the file, as it stands once any changes are written through, to another, which is then mapped. The
+     * bytes are transferred between the files by the operating system, without passing through the mappings.
+     *
+     * @throws IOException if the target is mapped by an open store
+     */
+    MappedProximityStore copy(Path target) throws IOException {
+        checkNotOpen(target);
+        force();
+        try (FileChannel from = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel to = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long length = from.size();
+            long position = 0;
+            while (position < length) {
+                position += from.transferTo(position, length - position, to);
+            }
+        }
+        return open(target);
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    @Override
+    public double get(long index) {
+        ByteBuffer block = blocks[(int) (index >>> BLOCK_BITS)];
+        int offset = (int) (index & BLOCK_MASK);
+        return precision == Proximity.Precision.FLOAT
+                ? block.getFloat(offset * Float.BYTES)
+                : block.getDouble(offset * Double.BYTES);
+    }
+
+    @Override
+    public void set(long index, double value) {
+        ByteBuffer block = blocks[(int) (index >>> BLOCK_BITS)];
+        int offset = (int) (index & BLOCK_MASK);
+        if (precision == Proximity.Precision.FLOAT) {
+            block.putFloat(offset * Float.BYTES, (float) value);
+        } else {
+            block.putDouble(offset * Double.BYTES, value);
+        }
+    }
+
+    @Override
+    public void get(long index, double[] values, int offset, int length) {
+        while (length > 0) {
+            int offsetInBlock = (int) (index & BLOCK_MASK);
+            int count = (int) Math.min(length, (1L << BLOCK_BITS) - offsetInBlock);
+            ByteBuffer block = view(index);
+            if (precision == Proximity.Precision.FLOAT) {
+                for (int i = 0; i < count; i++) {
+                    values[offset + i] = block.getFloat();
+                }
+            } else {
+                block.asDoubleBuffer().get(values, offset, count);
+            }
+            index += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void set(long index, double[] values, int offset, int length) {
+        while (length > 0) {
+            int offsetInBlock = (int) (index & BLOCK_MASK);
+            int count = (int) Math.min(length, (1L << BLOCK_BITS) - offsetInBlock);
+            ByteBuffer block = view(index);
+            if (precision == Proximity.Precision.FLOAT) {
+                for (int i = 0; i < count; i++) {
+                    block.putFloat((float) values[offset + i]);
+                }
+            } else {
+                block.asDoubleBuffer().put(values, offset, count);
+            }
+            index += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Returns a view of the block holding the entry, positioned at it, so concurrent bulk reads and writes don't
+     * share a position
+     */
+    private ByteBuffer view(long index) {
+        ByteBuffer view = blocks[(int) (index >>> BLOCK_BITS)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        view.position((int) (index & BLOCK_MASK) * (precision == Proximity.Precision.FLOAT
+                ? Float.BYTES
+                : Double.BYTES));
+        return view;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public Proximity.Precision precision() {
+        return precision;
+    }
+
+    /**
+     * Writes any changes through to the file
+     */
+    void force() {
+        for (MappedByteBuffer block : blocks) {
+            block.force();
+        }
+    }
+
+    /**
+     * Writes any changes through to the file and releases the mappings, after which the file can be created
+     * again. The store must not be used once closed, nor while it is being closed. Closing twice does nothing.
+     *
+     * Where the JVM doesn't allow releasing a mapping, it's left to the garbage collector, and since it may then
+     * outlive the store, the file can't be created again for the rest of the run.
+     */
+    synchronized void close() {
+        if (blocks == null) {
+            return;
+        }
+        MappedByteBuffer[] mapped = blocks;
+        force();
+        blocks = null;
+        boolean released = true;
+        for (MappedByteBuffer block : mapped) {
+            released &= unmap(block);
+        }
+        if (released) {
+            OPEN.remove(file);
+        }
+    }
+
+    /**
+     * Releases the mapping of a buffer now, rather than when the buffer is garbage collected, with
+     * {@code sun.misc.Unsafe.invokeCleaner} from Java 9, or else the buffer's cleaner
+     *
+     * @return whether the mapping was released
+     */
+    private static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return clean(buffer);
+        } catch (ReflectiveOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the cleaner of a buffer on Java 8, which has no {@code invokeCleaner}
+     *
+     * @return whether the mapping was released
+     */
+    private static boolean clean(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            // an empty mapping has no cleaner, and nothing to release
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            return true;
+        } catch (ReflectiveOperationException | SecurityException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.SplittableRandom;
+
+/**
+ * Mini-batch k-means (Sculley, "Web-Scale K-Means Clustering", 2010).
+ *
+ * Each iteration samples a small batch of rows straight from the columns, assigns them to their nearest
+ * centroids, and moves each centroid towards its rows by a per-centroid learning rate of 1 / (rows seen so far),
+ * optionally floored so the centroids keep adapting. Only the batch and the centroids are held in memory; the
+ * full set of rows is read once more at the end to assign every row to the final centroids.
+ */
+final class MiniBatchKmeans {
+
+    /**
+     * The number of batches without improvement in the smoothed batch distortion after which iteration stops
+     */
+    private static final int PATIENCE = 10;
+
+    private MiniBatchKmeans() {
+    }
+
+    /**
+     * @param batchSize       the number of rows sampled per iteration
+     * @param maxIterations   the maximum number of batches
+     * @param tolerance       iteration stops when no centroid moves by more than this squared distance, relative
+     *                        to the mean squared distance of a row from its centroid
+     * @param minLearningRate the floor of each centroid's learning rate; 0 gives Sculley's 1 / count schedule
+     */
+    static KmeansModel fit(NumberColumn[] columns,
+                           int k,
+                           int batchSize,
+                           int maxIterations,
+                           double tolerance,
+                           double minLearningRate,
+                           long seed) {
+
+        int n = columns[0].size();
+        int d = columns.length;
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // seed the centroids from a sample a few batches in size
+        double[][] sample = new double[Math.min(n, Math.max(3 * batchSize, 10 * k))][d];
+        for (double[] row : sample) {
+            read(columns, random.nextInt(n), row);
+        }
+        double[][] centroids = ParallelKmeans.seed(sample, k, random.nextLong());
+
+        long[] counts = new long[k];
+        double[][] batch = new double[batchSize][d];
+        int[] assigned = new int[batchSize];
+        double[][] before = new double[k][d];
+        boolean[] touched = new boolean[k];
+        double smoothed = Double.NaN;
+        double best = Double.MAX_VALUE;
+        int withoutImprovement = 0;
+        double alpha = Math.min(1.0, 2.0 * batchSize / (n + 1));
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double batchDistortion = 0;
+            for (int i = 0; i < batchSize; i++) {
+                read(columns, random.nextInt(n), batch[i]);
+                assigned[i] = ParallelKmeans.nearest(centroids, batch[i]);
+                batchDistortion += ParallelKmeans.squaredDistance(centroids[assigned[i]], batch[i]);
+            }
+            double meanDistortion = batchDistortion / batchSize;
+
+            // remember where each centroid touched by this batch started, to measure how far the batch moved it
+            for (int i = 0; i < batchSize; i++) {
+                int c = assigned[i];
+                if (!touched[c]) {
+                    touched[c] = true;
+                    System.arraycopy(centroids[c], 0, before[c], 0, d);
+                }
+            }
+            for (int i = 0; i < batchSize; i++) {
+                int c = assigned[i];
+                counts[c]++;
+                double rate = Math.max(1.0 / counts[c], minLearningRate);
+                double[] centroid = centroids[c];
+                double[] x = batch[i];
+                for (int j = 0; j < d; j++) {
+                    centroid[j] += rate * (x[j] - centroid[j]);
+                }
+            }
+            double maxShift = 0;
+            for (int c = 0; c < k; c++) {
+                if (touched[c]) {
+                    maxShift = Math.max(maxShift, ParallelKmeans.squaredDistance(before[c], centroids[c]));
+                    touched[c] = false;
+                }
+            }
+
+            if (iteration > 0 && maxShift <= tolerance * meanDistortion) {
+                break;
+            }
+            // the batch distortion is noisy, so convergence is judged on an exponentially weighted average of it
+            smoothed = Double.isNaN(smoothed) ? meanDistortion : (1 - alpha) * smoothed + alpha * meanDistortion;
+            if (smoothed < best) {
+                best = smoothed;
+                withoutImprovement = 0;
+            } else if (++withoutImprovement >= PATIENCE) {
+                break;
+            }
+        }
+        return ParallelKmeans.assign(columns, centroids);
+    }
+
+    private static void read(NumberColumn[] columns, int row, double[] x) {
+        for (int j = 0; j < columns.length; j++) {
+            x[j] = columns[j].get(row);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import smile.clustering.linkage.Linkage;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Agglomerative clustering by the nearest-neighbor chain (Murtagh, "A survey of recent advances in hierarchical
+ * clustering algorithms", 1983), for the reducible linkages: Ward's, complete and average.
+ *
+ * A chain of clusters is grown, each the nearest neighbor of the one before, until two clusters are each other's
+ * nearest neighbors; they are merged, and the chain continues from what is left of it. For a reducible linkage the
+ * merges are those of the usual agglomeration, found in O(n^2) time, in a different order that
+ * {@link Dendrogram#fromMerges(int, int[], int[], double[])} sorts out.
+ *
+ * Each step of the chain scans every cluster for the nearest neighbor of the top of the chain, in parallel blocks
+ * of clusters once there is more than one block, as the rows of SLINK are computed.
+ */
+final class NearestNeighborChain {
+
+    /**
+     * The number of clusters scanned by a single task when looking for the nearest neighbor in parallel
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    /**
+     * The dissimilarities between the clusters, kept up to date as they merge. Each cluster is numbered by one of
+     * its observations.
+     */
+    interface ClusterDistance {
+
+        /**
+         * Returns the dissimilarity between clusters a and b. Called from several threads at once between merges.
+         */
+        double d(int a, int b);
+
+        /**
+         * Merges cluster b into cluster a
+         */
+        void merge(int a, int b);
+    }
+
+    /**
+     * The nearest cluster found in a block, the lowest numbered on ties
+     */
+    private static final class Nearest {
+
+        final int cluster;
+        final double d;
+
+        Nearest(int cluster, double d) {
+            this.cluster = cluster;
+            this.d = d;
+        }
+
+        Nearest closer(Nearest other) {
+            return other.d < d || other.d == d && other.cluster < cluster ? other : this;
+        }
+    }
+
+    private NearestNeighborChain() {
+    }
+
+    static Dendrogram fit(int n, ClusterDistance distance) {
+        boolean[] active = new boolean[n];
+        Arrays.fill(active, true);
+        int[] chain = new int[n];
+        int length = 0;
+        int[] left = new int[n - 1];
+        int[] right = new int[n - 1];
+        double[] heights = new double[n - 1];
+        int next = 0;
+
+        for (int step = 0; step < n - 1; step++) {
+            if (length == 0) {
+                while (!active[next]) {
+                    next++;
+                }
+                chain[length++] = next;
+            }
+            while (true) {
+                int top = chain[length - 1];
+                // prefer the previous cluster in the chain on ties, so the chain always ends
+                int nearest = length > 1 ? chain[length - 2] : -1;
+                double best = nearest < 0 ? Double.POSITIVE_INFINITY : distance.d(top, nearest);
+                Nearest found = nearest(distance, active, top);
+                if (found.d < best) {
+                    best = found.d;
+                    nearest = found.cluster;
+                }
+                if (length > 1 && nearest == chain[length - 2]) {
+                    length -= 2;
+                    int a = Math.min(top, nearest);
+                    int b = Math.max(top, nearest);
+                    left[step] = a;
+                    right[step] = b;
+                    heights[step] = best;
+                    distance.merge(a, b);
+                    active[b] = false;
+                    break;
+                }
+                chain[length++] = nearest;
+            }
+        }
+        return Dendrogram.fromMerges(n, left, right, heights);
+    }
+
+    /**
+     * Returns the active cluster nearest to {@code top}, other than itself, the lowest numbered on ties
+     */
+    private static Nearest nearest(ClusterDistance distance, boolean[] active, int top) {
+        int n = active.length;
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (blocks == 1) {
+            return nearest(distance, active, top, 0, n);
+        }
+        return IntStream.range(0, blocks).parallel()
+                .mapToObj(block -> nearest(distance, active, top, block * BLOCK_SIZE,
+                        Math.min(n, (block + 1) * BLOCK_SIZE)))
+                .reduce(Nearest::closer)
+                .get();
+    }
+
+    private static Nearest nearest(ClusterDistance distance, boolean[] active, int top, int from, int to) {
+        int nearest = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int c = from; c < to; c++) {
+            if (active[c] && c != top) {
+                double d = distance.d(top, c);
+                if (d < best) {
+                    best = d;
+                    nearest = c;
+                }
+            }
+        }
+        return new Nearest(nearest, best);
+    }
+
+    /**
+     * The dissimilarities of a smile linkage, such as one over a {@link Proximity} matrix
+     */
+    static ClusterDistance of(Linkage linkage) {
+        return new ClusterDistance() {
+            @Override
+            public double d(int a, int b) {
+                return linkage.d(a, b);
+            }
+
+            @Override
+            public void merge(int a, int b) {
+                linkage.merge(a, b);
+            }
+        };
+    }
+
+    /**
+     * Ward's dissimilarity computed on the fly from the centroids and sizes of the clusters, needing O(n) memory
+     * beyond the data. With the squared Euclidean distance between observations as the starting point, Ward's
+     * Lance-Williams update gives 2 |A| |B| / (|A| + |B|) times the squared distance between the centroids of A
+     * and B; its square root is the height, as for smile's Ward linkage.
+     */
+    static final class Ward implements ClusterDistance {
+
+        private final double[][] centroids;
+        private final int[] sizes;
+
+        Ward(double[][] data) {
+            this.centroids = copy(data);
+            this.sizes = new int[data.length];
+            Arrays.fill(sizes, 1);
+        }
+
+        /**
+         * Starts from clusters of the given centroids and sizes, such as micro-clusters
+         */
+        Ward(double[][] centroids, int[] sizes) {
+            this.centroids = copy(centroids);
+            this.sizes = sizes.clone();
+        }
+
+        /**
+         * Copies the rows, since the centroids are updated in place as clusters merge
+         */
+        private static double[][] copy(double[][] rows) {
+            return Arrays.stream(rows).map(double[]::clone).toArray(double[][]::new);
+        }
+
+        @Override
+        public double d(int a, int b) {
+            double na = sizes[a];
+            double nb = sizes[b];
+            return Math.sqrt(2 * na * nb / (na + nb) * DistanceKernel.squaredDistance(centroids[a], centroids[b]));
+        }
+
+        @Override
+        public void merge(int a, int b) {
+            double[] ca = centroids[a];
+            double[] cb = centroids[b];
+            double na = sizes[a];
+            double nb = sizes[b];
+            for (int k = 0; k < ca.length; k++) {
+                ca[k] = (na * ca[k] + nb * cb[k]) / (na + nb);
+            }
+            sizes[a] += sizes[b];
+            centroids[b] = null;
+        }
+    }
+}
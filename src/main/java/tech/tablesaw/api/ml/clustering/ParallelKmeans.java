@@ -0,0 +1,397 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel k-means: k-means|| seeding followed by Lloyd iterations.
+ *
+ * Both the assignment and the update steps are a single parallel pass over blocks of rows. Each task sums the
+ * rows it assigns to each cluster, and the per-task sums are merged as the tasks join, so the update needs no
+ * further pass over the data.
+ */
+final class ParallelKmeans {
+
+    /**
+     * The number of rows handled by a single task
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    /**
+     * The number of sampling rounds of k-means||; a handful is enough in practice
+     */
+    private static final int SEEDING_ROUNDS = 5;
+
+    private ParallelKmeans() {
+    }
+
+    static int blockCount(int rows) {
+        return (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double d = a[i] - b[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the index of the centroid closest to x
+     */
+    static int nearest(double[][] centroids, double[] x) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < centroids.length; c++) {
+            double distance = squaredDistance(centroids[c], x);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The per-cluster sums of the rows assigned in one pass, or one block of a pass
+     */
+    static final class Sums {
+
+        final double[][] sum;
+        final int[] count;
+        double distortion;
+        long changed;
+
+        Sums(int k, int d) {
+            this.sum = new double[k][d];
+            this.count = new int[k];
+        }
+
+        void add(int cluster, double[] x) {
+            double[] s = sum[cluster];
+            for (int j = 0; j < x.length; j++) {
+                s[j] += x[j];
+            }
+            count[cluster]++;
+        }
+
+        void merge(Sums other) {
+            for (int c = 0; c < count.length; c++) {
+                double[] s = sum[c];
+                double[] o = other.sum[c];
+                for (int j = 0; j < s.length; j++) {
+                    s[j] += o[j];
+                }
+                count[c] += other.count[c];
+            }
+            distortion += other.distortion;
+            changed += other.changed;
+        }
+
+        /**
+         * Moves each centroid to the mean of its rows. A cluster that lost all its rows keeps its centroid.
+         */
+        void updateCentroids(double[][] centroids) {
+            for (int c = 0; c < count.length; c++) {
+                if (count[c] > 0) {
+                    for (int j = 0; j < centroids[c].length; j++) {
+                        centroids[c][j] = sum[c][j] / count[c];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns every row to its nearest centroid, in parallel, recording the assignments in {@code labels}
+     *
+     * @return the sums of the rows in each cluster, the distortion, and the number of rows that changed cluster
+     */
+    static Sums assign(double[][] data, double[][] centroids, int[] labels) {
+        int n = data.length;
+        int k = centroids.length;
+        int d = centroids[0].length;
+        return IntStream.range(0, blockCount(n)).parallel().collect(
+                () -> new Sums(k, d),
+                (sums, block) -> {
+                    int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+                    for (int row = block * BLOCK_SIZE; row < to; row++) {
+                        double[] x = data[row];
+                        int best = 0;
+                        double bestDistance = Double.MAX_VALUE;
+                        for (int c = 0; c < k; c++) {
+                            double distance = squaredDistance(centroids[c], x);
+                            if (distance < bestDistance) {
+                                bestDistance = distance;
+                                best = c;
+                            }
+                        }
+                        if (labels[row] != best) {
+                            labels[row] = best;
+                            sums.changed++;
+                        }
+                        sums.add(best, x);
+                        sums.distortion += bestDistance;
+                    }
+                },
+                Sums::merge);
+    }
+
+    /**
+     * Runs Lloyd iterations from the given centroids until no row changes cluster, or for at most
+     * {@code maxIterations} updates
+     */
+    static KmeansModel lloyd(double[][] data, double[][] initialCentroids, int maxIterations) {
+        double[][] centroids = copy(initialCentroids);
+        int[] labels = new int[data.length];
+        Arrays.fill(labels, -1);
+
+        Sums sums = assign(data, centroids, labels);
+        for (int iteration = 0; iteration < maxIterations && sums.changed > 0; iteration++) {
+            sums.updateCentroids(centroids);
+            sums = assign(data, centroids, labels);
+        }
+        return new KmeansModel(centroids, labels, sums.count, sums.distortion);
+    }
+
+    /**
+     * Assigns every row of the given columns to its nearest centroid, reading the columns directly, in parallel
+     * blocks
+     *
+     * @return the model made of the given centroids and the resulting assignments
+     */
+    static KmeansModel assign(NumberColumn[] columns, double[][] centroids) {
+        int[] labels = new int[columns[0].size()];
+        Sums sums = assign(columns, centroids, labels, false);
+        return new KmeansModel(centroids, labels, sums.count, sums.distortion);
+    }
+
+    /**
+     * Returns the index of the centroid closest to each row of the given columns, found in parallel blocks
+     */
+    static int[] nearest(NumberColumn[] columns, double[][] centroids) {
+        int[] labels = new int[columns[0].size()];
+        assign(columns, centroids, labels, false);
+        return labels;
+    }
+
+    /**
+     * Assigns every row of the given columns to its nearest centroid, as {@link #assign(NumberColumn[], double[][])}
+     * does, recording the assignments in {@code labels}
+     *
+     * @param sum whether to sum the rows in each cluster, or only count them
+     * @return the counts, and if asked the sums, of the rows in each cluster, and the distortion
+     */
+    static Sums assign(NumberColumn[] columns, double[][] centroids, int[] labels, boolean sum) {
+        int n = columns[0].size();
+        int k = centroids.length;
+        int d = columns.length;
+        return IntStream.range(0, blockCount(n)).parallel().collect(
+                () -> new Sums(k, sum ? d : 0),
+                (partial, block) -> {
+                    double[] x = new double[d];
+                    int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+                    for (int row = block * BLOCK_SIZE; row < to; row++) {
+                        for (int j = 0; j < d; j++) {
+                            x[j] = columns[j].get(row);
+                        }
+                        int best = nearest(centroids, x);
+                        labels[row] = best;
+                        if (sum) {
+                            partial.add(best, x);
+                        } else {
+                            partial.count[best]++;
+                        }
+                        partial.distortion += squaredDistance(centroids[best], x);
+                    }
+                },
+                Sums::merge);
+    }
+
+    static double[][] copy(double[][] matrix) {
+        double[][] copy = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Chooses k initial centroids by k-means|| (Bahmani et al., "Scalable K-Means++", 2012).
+     *
+     * Rather than k sequential passes, as k-means++ needs, each of a few rounds samples about 2k rows in parallel,
+     * each with probability proportional to its squared distance from the candidates chosen so far. The candidates
+     * are then weighted by the number of rows closest to them and reduced to k by weighted k-means++.
+     */
+    static double[][] seed(double[][] data, int k, long seed) {
+        int n = data.length;
+        SplittableRandom random = new SplittableRandom(seed);
+
+        int[] candidates = new int[1 + SEEDING_ROUNDS * 4 * k];
+        int candidateCount = 0;
+        candidates[candidateCount++] = random.nextInt(n);
+
+        double[] cost = new double[n];
+        Arrays.fill(cost, Double.MAX_VALUE);
+        double total = updateCosts(data, cost, candidates, 0, candidateCount);
+
+        double oversampling = 2.0 * k;
+        for (int round = 0; round < SEEDING_ROUNDS && total > 0; round++) {
+            long roundSeed = random.nextLong();
+            double psi = total;
+            int[] sampled = IntStream.range(0, blockCount(n)).parallel()
+                    .flatMap(block -> {
+                        SplittableRandom blockRandom = new SplittableRandom(roundSeed + block);
+                        int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+                        return IntStream.range(block * BLOCK_SIZE, to)
+                                .filter(row -> blockRandom.nextDouble() < oversampling * cost[row] / psi);
+                    })
+                    .toArray();
+            int from = candidateCount;
+            if (candidateCount + sampled.length > candidates.length) {
+                candidates = Arrays.copyOf(candidates, candidateCount + sampled.length);
+            }
+            System.arraycopy(sampled, 0, candidates, candidateCount, sampled.length);
+            candidateCount += sampled.length;
+            total = updateCosts(data, cost, candidates, from, candidateCount);
+        }
+
+        double[][] points = new double[candidateCount][];
+        for (int i = 0; i < candidateCount; i++) {
+            points[i] = data[candidates[i]];
+        }
+        if (candidateCount <= k) {
+            // too few distinct candidates, e.g. when the data has fewer than k distinct rows: pad with random rows
+            double[][] centroids = new double[k][];
+            for (int i = 0; i < k; i++) {
+                centroids[i] = (i < candidateCount ? points[i] : data[random.nextInt(n)]).clone();
+            }
+            return centroids;
+        }
+        return weightedKmeansPlusPlus(points, weights(data, points), k, random);
+    }
+
+    /**
+     * Lowers each row's cost to its squared distance from the candidates in [from, to), in parallel
+     *
+     * @return the total cost
+     */
+    private static double updateCosts(double[][] data, double[] cost, int[] candidates, int from, int to) {
+        int n = data.length;
+        return IntStream.range(0, blockCount(n)).parallel().mapToDouble(block -> {
+            double total = 0;
+            int end = Math.min(n, (block + 1) * BLOCK_SIZE);
+            for (int row = block * BLOCK_SIZE; row < end; row++) {
+                double c = cost[row];
+                for (int i = from; i < to; i++) {
+                    c = Math.min(c, squaredDistance(data[row], data[candidates[i]]));
+                }
+                cost[row] = c;
+                total += c;
+            }
+            return total;
+        }).sum();
+    }
+
+    /**
+     * Returns the number of rows closest to each candidate
+     */
+    private static double[] weights(double[][] data, double[][] points) {
+        int n = data.length;
+        return IntStream.range(0, blockCount(n)).parallel().collect(
+                () -> new double[points.length],
+                (weights, block) -> {
+                    int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+                    for (int row = block * BLOCK_SIZE; row < to; row++) {
+                        weights[nearest(points, data[row])]++;
+                    }
+                },
+                (a, b) -> {
+                    for (int i = 0; i < a.length; i++) {
+                        a[i] += b[i];
+                    }
+                });
+    }
+
+    /**
+     * Chooses k of the weighted points by greedy k-means++: at each step a few points are sampled, each with
+     * probability proportional to its weight times its squared distance from the points already chosen, and the one
+     * that most lowers the total weighted cost is kept. The candidates k-means|| samples crowd into the tails of the
+     * clusters, and plain k-means++ often picks two from the same cluster; trying a few and keeping the best rarely
+     * does.
+     */
+    private static double[][] weightedKmeansPlusPlus(double[][] points, double[] weights, int k,
+                                                     SplittableRandom random) {
+        int m = points.length;
+        int trials = 2 + (int) Math.log(k);
+        double[][] centroids = new double[k][];
+        double[] cost = new double[m];
+        Arrays.fill(cost, Double.MAX_VALUE);
+
+        int chosen = sample(weights, null, random);
+        for (int c = 0; c < k; c++) {
+            centroids[c] = points[chosen].clone();
+            if (c == k - 1) {
+                break;
+            }
+            for (int i = 0; i < m; i++) {
+                cost[i] = Math.min(cost[i], squaredDistance(points[i], centroids[c]));
+            }
+            double best = Double.MAX_VALUE;
+            for (int trial = 0; trial < trials; trial++) {
+                int candidate = sample(weights, cost, random);
+                double total = 0;
+                for (int i = 0; i < m; i++) {
+                    total += weights[i] * Math.min(cost[i], squaredDistance(points[i], points[candidate]));
+                }
+                if (total < best) {
+                    best = total;
+                    chosen = candidate;
+                }
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Samples an index with probability proportional to weight[i] * cost[i], or to weight[i] alone when cost is
+     * null
+     */
+    private static int sample(double[] weights, double[] cost, SplittableRandom random) {
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i] * (cost == null ? 1 : cost[i]);
+        }
+        if (total <= 0) {
+            return random.nextInt(weights.length);
+        }
+        double target = random.nextDouble() * total;
+        double cumulative = 0;
+        for (int i = 0; i < weights.length; i++) {
+            cumulative += weights[i] * (cost == null ? 1 : cost[i]);
+            if (cumulative > target) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+}
@@ -3,43 +3,341 @@ package tech.tablesaw.api.ml.clustering;
 import tech.tablesaw.api.NumberColumn;
 import tech.tablesaw.util.DoubleArrays;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
 /**
  * A matrix containing the measures of dissimilarity between all pairs
  * of observations.
+ *
+ * The matrix is symmetric with a zero diagonal, so only the entries below
+ * the diagonal are stored, row after row, in a single condensed array of
+ * n(n-1)/2 entries. Matrices of more than 2^31 entries are split into
+ * chunks, and the entries can be stored as floats to halve the memory.
+ *
+ * The matrix is computed in parallel, in square tiles of rows that fit in
+ * cache. By default the squared Euclidean distance between rows a and b is
+ * taken as ||a||^2 + ||b||^2 - 2 a.b, from precomputed norms of the centered
+ * rows, so the inner loop is a dot product; pairs whose distance is too
+ * small for that to be accurate are computed again exactly. Other metrics
+ * are available, see {@link Metric}.
+ *
+ * A matrix too large for the heap can be written to a memory-mapped file
+ * instead, see {@link #write(Path, Precision, NumberColumn...)}. Such a
+ * matrix should be closed when done with, which releases the file.
  */
-public class Proximity {
-    
-    private final double[][] proximityMatrix;
-    
+public class Proximity implements Closeable {
+
+    /**
+     * The number of rows on each side of a tile
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * The number of entries copied at a time by {@link #copy(Path)}
+     */
+    private static final int COPY_BLOCK = 8192;
+
     /**
-     * Constructor. 
-     * 
+     * The precision in which the entries are stored
+     */
+    public enum Precision {
+        DOUBLE, FLOAT
+    }
+
+    /**
+     * The measure of dissimilarity between two observations
+     */
+    public enum Metric {
+        /**
+         * The straight-line distance
+         */
+        EUCLIDEAN,
+        /**
+         * The sum of the absolute differences
+         */
+        MANHATTAN,
+        /**
+         * The largest absolute difference
+         */
+        CHEBYSHEV,
+        /**
+         * One less the cosine of the angle between the observations; an
+         * observation of zeros is at distance 1 from every other
+         */
+        COSINE,
+        /**
+         * One less the Pearson correlation between the values of the
+         * observations; a constant observation is at distance 1 from every other
+         */
+        CORRELATION,
+        /**
+         * The Euclidean distance after scaling by the covariance of the
+         * columns, which must be of full rank
+         */
+        MAHALANOBIS
+    }
+
+    private final int size;
+    private final ProximityStore store;
+
+    /**
+     * Constructor.
+     *
      * @param columns the columns of data containing the various measures (i.e., variables)
      * describing each observations
      */
     public Proximity(NumberColumn... columns) {
+        this(Precision.DOUBLE, columns);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param precision the precision in which the entries are stored
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     */
+    public Proximity(Precision precision, NumberColumn... columns) {
+        this(precision, false, columns);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param precision the precision in which the entries are stored
+     * @param exact whether to compute every distance directly from the
+     * differences of the rows, rather than from their norms and dot products
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     */
+    public Proximity(Precision precision, boolean exact, NumberColumn... columns) {
+        this(Metric.EUCLIDEAN, precision, exact, columns);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param metric the measure of dissimilarity between observations
+     * @param precision the precision in which the entries are stored
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     */
+    public Proximity(Metric metric, Precision precision, NumberColumn... columns) {
+        this(metric, precision, false, columns);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param metric the measure of dissimilarity between observations
+     * @param precision the precision in which the entries are stored
+     * @param exact whether to compute every distance directly from the
+     * differences of the rows, rather than from their norms and dot products;
+     * this matters for the Euclidean, Mahalanobis, cosine and correlation
+     * distances, whose fast forms lose accuracy for rows close together
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     */
+    public Proximity(Metric metric, Precision precision, boolean exact, NumberColumn... columns) {
+        this(DoubleArrays.to2dArray(columns), metric, precision, exact);
+    }
+
+    /**
+     * Computes the Euclidean distances between the rows of the given array
+     */
+    Proximity(double[][] input) {
+        this(input, Metric.EUCLIDEAN, Precision.DOUBLE, false);
+    }
+
+    private Proximity(double[][] input, Metric metric, Precision precision, boolean exact) {
+        this(input.length, ProximityStore.allocate(precision, entries(input.length)));
+        calcMatrix(input, metric, exact);
+    }
+
+    private Proximity(int size, ProximityStore store) {
+        this.size = size;
+        this.store = store;
+    }
+
+    /**
+     * Computes the matrix into a file, which is memory-mapped rather than
+     * read onto the heap, so the matrix can be as large as the disk allows
+     * and is paged in and out by the operating system as it is used. The
+     * file can be opened again by {@link #open(Path)}.
+     *
+     * @param file the file to write, which is overwritten if it exists
+     * @param precision the precision in which the entries are stored
+     * @param columns the columns of data containing the various measures (i.e., variables)
+     * describing each observations
+     * @throws IOException if the file can't be written, or is mapped by a
+     * matrix that hasn't been closed
+     */
+    public static Proximity write(Path file, Precision precision, NumberColumn... columns) throws IOException {
+        return write(file, Metric.EUCLIDEAN, precision, columns);
+    }
+
+    /**
+     * Computes the matrix into a memory-mapped file, as
+     * {@link #write(Path, Precision, NumberColumn...)} does, measuring
+     * dissimilarity by the given metric.
+     */
+    public static Proximity write(Path file, Metric metric, Precision precision, NumberColumn... columns)
+            throws IOException {
+        return write(file, metric, precision, false, columns);
+    }
+
+    /**
+     * Computes the matrix into a memory-mapped file, as
+     * {@link #write(Path, Precision, NumberColumn...)} does, measuring
+     * dissimilarity by the given metric, exactly if {@code exact}; see
+     * {@link #Proximity(Metric, Precision, boolean, NumberColumn...)}.
+     */
+    public static Proximity write(Path file, Metric metric, Precision precision, boolean exact,
+                                  NumberColumn... columns) throws IOException {
         double[][] input = DoubleArrays.to2dArray(columns);
-        this.proximityMatrix = calcMatrix(input);
-    }
-    
-    private double[][] calcMatrix(double[][] input) {
-        
-        int n = input.length;
-        double[][] proximity = new double[n][];
-        
-        for (int i = 0; i < n; i++) {
-            proximity[i] = new double[i+1];
-            for (int j = 0; j < i; j++) {
-                // Calculate Euclidean distance between two arrays (i.e., two rows of a Table)
-                proximity[i][j] = smile.math.Math.distance(input[i], input[j]);
+        MappedProximityStore store = MappedProximityStore.create(file, precision, input.length);
+        Proximity proximity = new Proximity(input.length, store);
+        proximity.calcMatrix(input, metric, exact);
+        store.force();
+        return proximity;
+    }
+
+    /**
+     * Maps a matrix written by {@link #write(Path, Precision, NumberColumn...)}
+     * or {@link #copy(Path)}. Changes to the matrix, such as those a linkage
+     * makes, are written through to the file.
+     */
+    public static Proximity open(Path file) throws IOException {
+        MappedProximityStore store = MappedProximityStore.open(file);
+        return new Proximity(store.rows(), store);
+    }
+
+    /**
+     * Copies the matrix to a memory-mapped file. Since a linkage updates its
+     * matrix in place, clustering a copy leaves this matrix to be clustered
+     * again, with another linkage type. A mapped matrix is copied file to
+     * file by the operating system, and one on heap in blocks of entries.
+     *
+     * @param file the file to write, which is overwritten if it exists
+     * @throws IOException if the file can't be written, or is mapped by a
+     * matrix that hasn't been closed
+     */
+    public Proximity copy(Path file) throws IOException {
+        if (store instanceof MappedProximityStore) {
+            return new Proximity(size, ((MappedProximityStore) store).copy(file));
+        }
+        MappedProximityStore copy = MappedProximityStore.create(file, store.precision(), size);
+        double[] block = new double[COPY_BLOCK];
+        for (long index = 0; index < store.size(); index += COPY_BLOCK) {
+            int length = (int) Math.min(COPY_BLOCK, store.size() - index);
+            store.get(index, block, 0, length);
+            copy.set(index, block, 0, length);
+        }
+        copy.force();
+        return new Proximity(size, copy);
+    }
+
+    /**
+     * Releases the file of a memory-mapped matrix, writing any changes
+     * through to it first; the matrix can't be used afterwards. Does nothing
+     * for a matrix on heap.
+     */
+    @Override
+    public void close() {
+        if (store instanceof MappedProximityStore) {
+            ((MappedProximityStore) store).close();
+        }
+    }
+
+    /**
+     * Returns the number of entries below the diagonal of an n by n matrix
+     */
+    static long entries(int n) {
+        return (long) n * (n - 1) / 2;
+    }
+
+    /**
+     * Returns the position of the entry in row i and column j, for i > j, in the condensed array
+     */
+    static long index(int i, int j) {
+        return (long) i * (i - 1) / 2 + j;
+    }
+
+    private void calcMatrix(double[][] input, Metric metric, boolean exact) {
+        DistanceKernel kernel = DistanceKernel.of(metric, exact);
+        double[][] data = kernel.prepare(input, metric);
+        double[] norms = kernel.norms(data);
+        // the tiles on and below the diagonal, numbered row by row
+        int tiles = (size + TILE_SIZE - 1) / TILE_SIZE;
+        IntStream.range(0, tiles * (tiles + 1) / 2).parallel().forEach(tile -> {
+            int rowTile = (int) ((Math.sqrt(8.0 * tile + 1) - 1) / 2);
+            while (rowTile * (rowTile + 1) / 2 > tile) {
+                rowTile--;
+            }
+            while ((rowTile + 1) * (rowTile + 2) / 2 <= tile) {
+                rowTile++;
+            }
+            int columnTile = tile - rowTile * (rowTile + 1) / 2;
+            int rowFrom = rowTile * TILE_SIZE;
+            int rowTo = Math.min(size, rowFrom + TILE_SIZE);
+            int columnFrom = columnTile * TILE_SIZE;
+            int columnTo = Math.min(size, columnFrom + TILE_SIZE);
+            // each row of the tile is filled into the buffer, then written to the store in one call
+            double[] distances = new double[TILE_SIZE];
+            for (int i = Math.max(rowFrom, 1); i < rowTo; i++) {
+                int to = Math.min(i, columnTo);
+                kernel.row(data, norms, i, columnFrom, to, distances, 0);
+                store.set(index(i, columnFrom), distances, 0, to - columnFrom);
             }
+        });
+    }
+
+    /**
+     * Returns the number of observations
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the dissimilarity between observations i and j
+     */
+    public double get(int i, int j) {
+        if (i == j) {
+            return 0;
         }
-        
-        return proximity;
+        return i > j ? store.get(index(i, j)) : store.get(index(j, i));
+    }
+
+    /**
+     * Sets the dissimilarity between observations i and j, for i != j
+     */
+    void set(int i, int j, double value) {
+        store.set(i > j ? index(i, j) : index(j, i), value);
+    }
+
+    ProximityStore store() {
+        return store;
     }
-    
+
+    /**
+     * Returns the lower triangle of the matrix, diagonal included, as a
+     * jagged array. The array is built on each call, taking about twice
+     * the memory of the condensed matrix.
+     */
     public double[][] getMatrix() {
-        return this.proximityMatrix;
+        double[][] matrix = new double[size][];
+        long index = 0;
+        for (int i = 0; i < size; i++) {
+            matrix[i] = new double[i + 1];
+            for (int j = 0; j < i; j++) {
+                matrix[i][j] = store.get(index++);
+            }
+        }
+        return matrix;
     }
 
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import smile.clustering.linkage.Linkage;
+
+import java.util.Arrays;
+
+/**
+ * A smile {@link Linkage} that works directly on a condensed {@link Proximity} matrix, rather than on the copy
+ * smile's own linkages make of a jagged array, updating the dissimilarities in place by the Lance-Williams formula
+ * of the linkage type.
+ *
+ * Ward's and the centroid linkages work on squared distances, so the matrix is squared when the linkage is made
+ * and {@link #d(int, int)} takes the square root, which gives smile's heights for those linkages.
+ */
+class ProximityLinkage extends Linkage {
+
+    private final Proximity proximity;
+    private final LinkageFactory.type type;
+    private final boolean squared;
+    private final int[] n;
+
+    ProximityLinkage(Proximity proximity, LinkageFactory.type type) {
+        this(proximity, type, ones(proximity.size()));
+    }
+
+    /**
+     * Starts from clusters of the given sizes, such as micro-clusters, with the matrix holding the distances
+     * between their centroids. For Ward's linkage each squared distance is scaled by 2 |A| |B| / (|A| + |B|),
+     * which is Ward's dissimilarity between the clusters and is 1 for single observations.
+     */
+    ProximityLinkage(Proximity proximity, LinkageFactory.type type, int[] sizes) {
+        this.proximity = proximity;
+        this.type = type;
+        this.squared = type == LinkageFactory.type.WARD
+                || type == LinkageFactory.type.UPGMC
+                || type == LinkageFactory.type.WPGMC;
+        this.n = sizes.clone();
+        if (squared) {
+            ProximityStore store = proximity.store();
+            for (int i = 1; i < n.length; i++) {
+                for (int j = 0; j < i; j++) {
+                    long index = Proximity.index(i, j);
+                    double d = store.get(index);
+                    double scale = type == LinkageFactory.type.WARD ? 2.0 * n[i] * n[j] / (n[i] + n[j]) : 1;
+                    store.set(index, scale * d * d);
+                }
+            }
+        }
+    }
+
+    private static int[] ones(int size) {
+        int[] ones = new int[size];
+        Arrays.fill(ones, 1);
+        return ones;
+    }
+
+    @Override
+    public int size() {
+        return proximity.size();
+    }
+
+    @Override
+    public float d(int i, int j) {
+        double d = proximity.get(i, j);
+        return (float) (squared ? Math.sqrt(d) : d);
+    }
+
+    /**
+     * Merges cluster j into cluster i
+     */
+    @Override
+    public void merge(int i, int j) {
+        int size = proximity.size();
+        double ni = n[i];
+        double nj = n[j];
+        double dij = proximity.get(i, j);
+        for (int k = 0; k < size; k++) {
+            if (k == i || k == j) {
+                continue;
+            }
+            double dki = proximity.get(k, i);
+            double dkj = proximity.get(k, j);
+            double d;
+            switch (type) {
+                case SINGLE:
+                    d = Math.min(dki, dkj);
+                    break;
+                case COMPLETE:
+                    d = Math.max(dki, dkj);
+                    break;
+                case UPGMA:
+                    d = (ni * dki + nj * dkj) / (ni + nj);
+                    break;
+                case WPGMA:
+                    d = (dki + dkj) / 2;
+                    break;
+                case UPGMC:
+                    d = (ni * dki + nj * dkj) / (ni + nj) - ni * nj * dij / ((ni + nj) * (ni + nj));
+                    break;
+                case WPGMC:
+                    d = (dki + dkj) / 2 - dij / 4;
+                    break;
+                case WARD: {
+                    double nk = n[k];
+                    d = ((ni + nk) * dki + (nj + nk) * dkj - nk * dij) / (ni + nj + nk);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown linkage type: " + type);
+            }
+            proximity.set(k, i, d);
+        }
+        n[i] += n[j];
+    }
+
+    @Override
+    public String toString() {
+        return type + " linkage";
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+/**
+ * The entries of a condensed proximity matrix, addressed by a long index so that matrices of more than 2^31
+ * entries can be held. On heap, the entries are kept in chunks of at most 2^30, each a single array; see
+ * {@link MappedProximityStore} for the entries in a file.
+ */
+interface ProximityStore {
+
+    int CHUNK_BITS = 30;
+
+    long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    double get(long index);
+
+    void set(long index, double value);
+
+    /**
+     * Reads {@code length} entries, from {@code index} on, into {@code values} from {@code offset} on
+     */
+    default void get(long index, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = get(index + i);
+        }
+    }
+
+    /**
+     * Writes {@code length} entries, from {@code index} on, from {@code values} from {@code offset} on, so
+     * consecutive entries take one call rather than one each
+     */
+    default void set(long index, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            set(index + i, values[offset + i]);
+        }
+    }
+
+    /**
+     * Returns the number of entries
+     */
+    long size();
+
+    Proximity.Precision precision();
+
+    /**
+     * Returns a store of {@code size} zeros on heap, in the given precision
+     */
+    static ProximityStore allocate(Proximity.Precision precision, long size) {
+        return precision == Proximity.Precision.FLOAT ? new FloatStore(size) : new DoubleStore(size);
+    }
+
+    static int chunkCount(long size) {
+        return (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    }
+
+    static int chunkLength(long size, int chunk) {
+        return (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_BITS));
+    }
+
+    final class DoubleStore implements ProximityStore {
+
+        private final long size;
+        private final double[][] chunks;
+
+        DoubleStore(long size) {
+            this.size = size;
+            this.chunks = new double[chunkCount(size)][];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                chunks[chunk] = new double[chunkLength(size, chunk)];
+            }
+        }
+
+        @Override
+        public double get(long index) {
+            return chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+        }
+
+        @Override
+        public void set(long index, double value) {
+            chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)] = value;
+        }
+
+        @Override
+        public void get(long index, double[] values, int offset, int length) {
+            while (length > 0) {
+                double[] chunk = chunks[(int) (index >>> CHUNK_BITS)];
+                int from = (int) (index & CHUNK_MASK);
+                int count = Math.min(length, chunk.length - from);
+                System.arraycopy(chunk, from, values, offset, count);
+                index += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void set(long index, double[] values, int offset, int length) {
+            while (length > 0) {
+                double[] chunk = chunks[(int) (index >>> CHUNK_BITS)];
+                int from = (int) (index & CHUNK_MASK);
+                int count = Math.min(length, chunk.length - from);
+                System.arraycopy(values, offset, chunk, from, count);
+                index += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Proximity.Precision precision() {
+            return Proximity.Precision.DOUBLE;
+        }
+    }
+
+    final class FloatStore implements ProximityStore {
+
+        private final long size;
+        private final float[][] chunks;
+
+        FloatStore(long size) {
+            this.size = size;
+            this.chunks = new float[chunkCount(size)][];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                chunks[chunk] = new float[chunkLength(size, chunk)];
+            }
+        }
+
+        @Override
+        public double get(long index) {
+            return chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+        }
+
+        @Override
+        public void set(long index, double value) {
+            chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)] = (float) value;
+        }
+
+        @Override
+        public void get(long index, double[] values, int offset, int length) {
+            while (length > 0) {
+                float[] chunk = chunks[(int) (index >>> CHUNK_BITS)];
+                int from = (int) (index & CHUNK_MASK);
+                int count = Math.min(length, chunk.length - from);
+                for (int i = 0; i < count; i++) {
+                    values[offset + i] = chunk[from + i];
+                }
+                index += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void set(long index, double[] values, int offset, int length) {
+            while (length > 0) {
+                float[] chunk = chunks[(int) (index >>> CHUNK_BITS)];
+                int from = (int) (index & CHUNK_MASK);
+                int count = Math.min(length, chunk.length - from);
+                for (int i = 0; i < count; i++) {
+                    chunk[from + i] = (float) values[offset + i];
+                }
+                index += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Proximity.Precision precision() {
+            return Proximity.Precision.FLOAT;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+/**
+ * Single linkage clustering by SLINK (Sibson, "SLINK: an optimally efficient algorithm for the single-link cluster
+ * method", 1973), in O(n^2) time and O(n) memory.
+ *
+ * The observations are added one at a time, each needing only its distances to the observations before it, and
+ * the tree is kept in pointer representation: for each observation, the height at which it joins a cluster of
+ * later observations, and the last observation of that cluster.
+ */
+final class Slink {
+
+    /**
+     * The distances from one observation to all those before it
+     */
+    interface RowDistances {
+
+        /**
+         * Writes the distance from observation i to each observation j < i into distances[j]
+         */
+        void distances(int i, double[] distances);
+    }
+
+    private Slink() {
+    }
+
+    static Dendrogram fit(int n, RowDistances rows) {
+        int[] pointer = new int[n];
+        double[] lambda = new double[n];
+        double[] m = new double[n];
+        for (int i = 0; i < n; i++) {
+            pointer[i] = i;
+            lambda[i] = Double.POSITIVE_INFINITY;
+            rows.distances(i, m);
+            for (int j = 0; j < i; j++) {
+                int p = pointer[j];
+                if (lambda[j] >= m[j]) {
+                    m[p] = Math.min(m[p], lambda[j]);
+                    lambda[j] = m[j];
+                    pointer[j] = i;
+                } else {
+                    m[p] = Math.min(m[p], m[j]);
+                }
+            }
+            for (int j = 0; j < i; j++) {
+                if (lambda[j] >= lambda[pointer[j]]) {
+                    pointer[j] = i;
+                }
+            }
+        }
+
+        // each observation but the last joins the cluster of its pointer at its lambda
+        int[] left = new int[n - 1];
+        int[] right = new int[n - 1];
+        double[] heights = new double[n - 1];
+        for (int i = 0; i < n - 1; i++) {
+            left[i] = i;
+            right[i] = pointer[i];
+            heights[i] = lambda[i];
+        }
+        return Dendrogram.fromMerges(n, left, right, heights);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The search shared by G-means and X-means. Starting from a single cluster, each round tests every cluster for a
+ * split by running 2-means on its rows, splits the clusters the test favours most, up to maxK clusters in all, and
+ * refines the result by Lloyd iterations over all the rows. The search stops when a round splits nothing, when
+ * there are maxK clusters, or when the time budget runs out.
+ *
+ * The split tests of a round are independent, so they run concurrently. Everything runs in the given pool, usually
+ * the common pool, whose threads the parallel Lloyd passes within and between the tests share. The pool is
+ * neither created nor shut down here, so a caller that bounds the threads with a pool of its own can reuse it.
+ */
+final class SplittingKmeans {
+
+    /**
+     * Clusters with fewer rows than this are never split
+     */
+    static final int MIN_SPLIT_SIZE = 25;
+
+    private static final int MAX_ITERATIONS = 100;
+
+    /**
+     * Decides whether a cluster should be split in two
+     */
+    interface SplitTest {
+
+        /**
+         * Returns a score that is positive when the rows are better described by the two clusters of {@code split}
+         * than by the single cluster around {@code centroid}. Clusters are split in decreasing order of score.
+         */
+        double score(double[][] rows, double[] centroid, KmeansModel split);
+    }
+
+    /**
+     * The outcome of testing one cluster
+     */
+    private static final class Split {
+
+        final int cluster;
+        final double score;
+        final double[][] centroids;
+
+        Split(int cluster, double score, double[][] centroids) {
+            this.cluster = cluster;
+            this.score = score;
+            this.centroids = centroids;
+        }
+    }
+
+    private SplittingKmeans() {
+    }
+
+    /**
+     * @param pool        the pool to run in
+     * @param budgetNanos the time after which no more tests are started, and the current clusters are returned
+     *                    after a final assignment of the rows
+     * @param seed        the seed of the 2-means splits, so the same seed gives the same clusters
+     */
+    static KmeansModel fit(double[][] data, int maxK, SplitTest test, ForkJoinPool pool, long budgetNanos,
+                           long seed) {
+        long start = System.nanoTime();
+        return pool.submit(() -> search(data, maxK, test, start, budgetNanos, seed)).join();
+    }
+
+    private static KmeansModel search(double[][] data, int maxK, SplitTest test, long start, long budgetNanos,
+                                      long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        KmeansModel model = ParallelKmeans.lloyd(data, new double[][]{mean(data)}, 0);
+
+        while (model.centroids.length < maxK && System.nanoTime() - start < budgetNanos) {
+            int k = model.centroids.length;
+            double[][][] members = members(data, model);
+            long[] seeds = random.longs(k).toArray();
+            KmeansModel current = model;
+            List<Split> splits = IntStream.range(0, k).parallel()
+                    .mapToObj(c -> {
+                        if (members[c].length < MIN_SPLIT_SIZE || System.nanoTime() - start >= budgetNanos) {
+                            return null;
+                        }
+                        double[][] rows = members[c];
+                        KmeansModel split = ParallelKmeans.lloyd(rows, ParallelKmeans.seed(rows, 2, seeds[c]),
+                                MAX_ITERATIONS);
+                        return new Split(c, test.score(rows, current.centroids[c], split), split.centroids);
+                    })
+                    .filter(split -> split != null && split.score > 0)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            if (splits.isEmpty()) {
+                break;
+            }
+
+            // split the clusters with the strongest evidence first, as far as maxK allows
+            splits.sort(Comparator.comparingDouble((Split split) -> split.score).reversed());
+            boolean[] replaced = new boolean[k];
+            List<double[]> centers = new ArrayList<>();
+            for (Split split : splits.subList(0, Math.min(splits.size(), maxK - k))) {
+                replaced[split.cluster] = true;
+                centers.add(split.centroids[0]);
+                centers.add(split.centroids[1]);
+            }
+            for (int c = 0; c < k; c++) {
+                if (!replaced[c]) {
+                    centers.add(model.centroids[c]);
+                }
+            }
+            boolean expired = System.nanoTime() - start >= budgetNanos;
+            model = ParallelKmeans.lloyd(data, centers.toArray(new double[0][]), expired ? 0 : MAX_ITERATIONS);
+        }
+        return model;
+    }
+
+    private static double[] mean(double[][] data) {
+        double[] mean = new double[data[0].length];
+        for (double[] x : data) {
+            for (int j = 0; j < mean.length; j++) {
+                mean[j] += x[j];
+            }
+        }
+        for (int j = 0; j < mean.length; j++) {
+            mean[j] /= data.length;
+        }
+        return mean;
+    }
+
+    /**
+     * Returns the rows of each cluster
+     */
+    private static double[][][] members(double[][] data, KmeansModel model) {
+        int k = model.centroids.length;
+        double[][][] members = new double[k][][];
+        for (int c = 0; c < k; c++) {
+            members[c] = new double[model.sizes[c]][];
+        }
+        int[] filled = new int[k];
+        for (int row = 0; row < data.length; row++) {
+            int c = model.labels[row];
+            members[c][filled[c]++] = data[row];
+        }
+        return members;
+    }
+}
@@ -14,46 +14,90 @@
 
 package tech.tablesaw.api.ml.clustering;
 
+import com.google.common.base.Preconditions;
 import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.NumberColumn;
-import smile.clustering.XMeans;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.api.Table;
 import tech.tablesaw.util.DoubleArrays;
 
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * X-means clustering (Pelleg and Moore, "X-means: Extending K-means with Efficient Estimation of the Number of
+ * Clusters", 2000), which grows the number of clusters up to maxK, splitting each cluster whose 2-means split has
+ * a higher Bayesian information criterion than the cluster itself.
+ *
+ * The split tests of each round run concurrently, see {@link SplittingKmeans}.
+ */
 public class Xmeans {
 
-    private final XMeans model;
+    private static final double LOG2PI = Math.log(2 * Math.PI);
+
+    private final KmeansModel model;
     private final NumberColumn[] inputColumns;
 
     public Xmeans(int maxK, NumberColumn... columns) {
+        this(maxK, new Random().nextLong(), columns);
+    }
+
+    /**
+     * Grows the clusters in the common pool from the given seed, so the same seed gives the same clusters
+     */
+    public Xmeans(int maxK, long seed, NumberColumn... columns) {
+        this(maxK, ForkJoinPool.commonPool(), null, seed, columns);
+    }
+
+    /**
+     * Grows the clusters in the given pool, which bounds the threads used, from the given seed, for about
+     * {@code timeLimit}, after which no more split tests are started and the clusters found so far are kept. The
+     * pool is left running, so it can be reused.
+     *
+     * @param timeLimit the time budget, or null for none
+     */
+    public Xmeans(int maxK, ForkJoinPool pool, Duration timeLimit, long seed, NumberColumn... columns) {
+        Preconditions.checkArgument(maxK >= 2, "maxK must be at least 2: %s", maxK);
         double[][] data = DoubleArrays.to2dArray(columns);
-        this.model = new XMeans(data, maxK);
+        long budget = timeLimit == null ? Long.MAX_VALUE : timeLimit.toNanos();
+        this.model = SplittingKmeans.fit(data, maxK, Xmeans::score, pool, budget, seed);
         this.inputColumns = columns;
     }
 
     public int predict(double[] x) {
-        return model.predict(x);
+        return ParallelKmeans.nearest(model.centroids, x);
+    }
+
+    /**
+     * Returns the cluster of each row of the given columns, which must match the columns the model was built
+     * from. The nearest centroids are found in parallel blocks read straight from the columns, and the result can
+     * be added to the columns' table.
+     */
+    public DoubleColumn assign(NumberColumn... columns) {
+        Preconditions.checkArgument(columns.length == inputColumns.length,
+                "Expected %s columns but got %s", inputColumns.length, columns.length);
+        return DoubleColumn.create("Cluster", ParallelKmeans.nearest(columns, model.centroids));
     }
 
     public double[][] centroids() {
-        return model.centroids();
+        return model.centroids;
     }
 
     public double distortion() {
-        return model.distortion();
+        return model.distortion;
     }
 
     public int getClusterCount() {
-        return model.getNumClusters();
+        return model.centroids.length;
     }
 
     public int[] getClusterLabels() {
-        return model.getClusterLabel();
+        return model.labels;
     }
 
     public int[] getClusterSizes() {
-        return model.getClusterSize();
+        return model.sizes;
     }
 
     public Table labeledCentroids() {
@@ -66,7 +110,7 @@ public class Xmeans {
             table.addColumns(centroid);
         }
 
-        double[][] centroids = model.centroids();
+        double[][] centroids = model.centroids;
 
         for (int i = 0; i < centroids.length; i++) {
             labelColumn.appendCell(String.valueOf(i));
@@ -77,4 +121,38 @@ public class Xmeans {
         }
         return table;
     }
+
+    /**
+     * Returns the gain in the Bayesian information criterion from splitting the rows in two
+     */
+    private static double score(double[][] rows, double[] centroid, KmeansModel split) {
+        int n = rows.length;
+        int d = centroid.length;
+        double distortion = 0;
+        for (double[] row : rows) {
+            distortion += ParallelKmeans.squaredDistance(row, centroid);
+        }
+        if (distortion == 0 || split.distortion == 0) {
+            return -1;
+        }
+        return bic(n, d, split.distortion, split.sizes) - bic(n, d, distortion, new int[]{n});
+    }
+
+    /**
+     * Returns the Bayesian information criterion of n rows of dimension d in clusters of the given sizes, under
+     * the identical spherical gaussian model
+     */
+    private static double bic(int n, int d, double distortion, int[] sizes) {
+        int k = sizes.length;
+        double variance = distortion / (n - k);
+        double logLikelihood = 0;
+        for (int size : sizes) {
+            if (size > 0) {
+                logLikelihood += (-size * LOG2PI - size * d * Math.log(variance) - (size - k)) / 2
+                        + size * Math.log(size) - size * Math.log(n);
+            }
+        }
+        int parameters = k + k * d;
+        return logLikelihood - 0.5 * parameters * Math.log(n);
+    }
 }
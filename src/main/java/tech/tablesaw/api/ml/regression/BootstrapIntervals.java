@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Percentile bootstrap confidence intervals for the coefficients of a least squares model.
+ *
+ * Each resample is drawn as a count of how many times each row was picked, rather than as a copy of the rows, and
+ * is refit by accumulating its normal equations directly from the original columns. Resamples are fit in
+ * parallel tasks of a few resamples each; a task makes one set of buffers and reuses it for all its resamples, and
+ * drops it when it finishes.
+ */
+final class BootstrapIntervals {
+
+    /**
+     * The number of resamples fit by a single task, which share one workspace
+     */
+    private static final int RESAMPLES_PER_TASK = 8;
+
+    private BootstrapIntervals() {
+    }
+
+    /**
+     * The buffers a task needs to fit a resample
+     */
+    private static final class Workspace {
+
+        private final int[] counts;
+        private final double[] x;
+        private final NormalEquations sums;
+
+        private Workspace(int rows, int p) {
+            this.counts = new int[rows];
+            this.x = new double[p];
+            this.sums = new NormalEquations(p);
+        }
+
+        /**
+         * Fits one resample
+         *
+         * @return the coefficients followed by the intercept, or null if the resample is collinear
+         */
+        private double[] fit(SplittableRandom random, NumberColumn response, NumberColumn[] explanatory) {
+            int rows = counts.length;
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < rows; i++) {
+                counts[random.nextInt(rows)]++;
+            }
+
+            // visiting the rows in order keeps the column reads sequential
+            sums.clear();
+            for (int row = 0; row < rows; row++) {
+                int count = counts[row];
+                if (count == 0) {
+                    continue;
+                }
+                for (int j = 0; j < x.length; j++) {
+                    x[j] = explanatory[j].get(row);
+                }
+                double y = response.get(row);
+                for (int c = 0; c < count; c++) {
+                    sums.add(y, x);
+                }
+            }
+            try {
+                return sums.solve(sums.inverseSxx());
+            } catch (IllegalStateException collinear) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Fits the model to {@code resamples} bootstrap resamples of the given rows and returns a table with one row
+     * for the intercept and one for each coefficient, giving the estimate from the full data, the bootstrap
+     * standard error, and the lower and upper percentile bounds. Resamples in which the explanatory variables are
+     * collinear are skipped.
+     */
+    static Table compute(LeastSquares model,
+                         NumberColumn response,
+                         NumberColumn[] explanatory,
+                         int resamples,
+                         double confidenceLevel,
+                         long seed) {
+
+        int rows = response.size();
+        int p = explanatory.length;
+
+        // split every generator up front, so the result depends only on the seed and not on the thread schedule
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[resamples];
+        for (int b = 0; b < resamples; b++) {
+            randoms[b] = root.split();
+        }
+
+        double[][] estimates = new double[p + 1][resamples];
+        int tasks = (resamples + RESAMPLES_PER_TASK - 1) / RESAMPLES_PER_TASK;
+        IntStream.range(0, tasks).parallel().forEach(task -> {
+            Workspace workspace = new Workspace(rows, p);
+            int to = Math.min(resamples, (task + 1) * RESAMPLES_PER_TASK);
+            for (int b = task * RESAMPLES_PER_TASK; b < to; b++) {
+                double[] w = workspace.fit(randoms[b], response, explanatory);
+                for (int j = 0; j <= p; j++) {
+                    estimates[j][b] = w == null ? Double.NaN : w[j];
+                }
+            }
+        });
+
+        Table table = Table.create(String.format("Bootstrap Confidence Intervals (%s resamples, %.1f%%)",
+                resamples, 100 * confidenceLevel));
+        StringColumn term = StringColumn.create("Term");
+        NumberColumn estimate = DoubleColumn.create("Estimate");
+        NumberColumn stdError = DoubleColumn.create("Std. Error");
+        NumberColumn lower = DoubleColumn.create("Lower");
+        NumberColumn upper = DoubleColumn.create("Upper");
+        table.addColumns(term, estimate, stdError, lower, upper);
+
+        double tail = (1 - confidenceLevel) / 2;
+        String[] names = model.explanatoryVariableNames();
+        double[] coefficients = model.coefficients();
+        for (int i = 0; i <= p; i++) {
+            // the intercept comes first, as in the model summary
+            int j = i == 0 ? p : i - 1;
+            double[] sample = valid(estimates[j]);
+            Arrays.sort(sample);
+            term.appendCell(i == 0 ? "(Intercept)" : names[j]);
+            estimate.append(i == 0 ? model.intercept() : coefficients[j]);
+            stdError.append(standardDeviation(sample));
+            lower.append(quantile(sample, tail));
+            upper.append(quantile(sample, 1 - tail));
+        }
+        return table;
+    }
+
+    private static double[] valid(double[] values) {
+        return Arrays.stream(values).filter(v -> !Double.isNaN(v)).toArray();
+    }
+
+    private static double standardDeviation(double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+        double mean = 0;
+        for (double v : values) {
+            mean += v;
+        }
+        mean /= values.length;
+        double ss = 0;
+        for (double v : values) {
+            ss += (v - mean) * (v - mean);
+        }
+        return Math.sqrt(ss / (values.length - 1));
+    }
+
+    /**
+     * Returns the q-th quantile of sorted values, interpolating linearly between order statistics
+     */
+    private static double quantile(double[] sorted, double q) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        double h = (sorted.length - 1) * q;
+        int lo = (int) Math.floor(h);
+        int hi = Math.min(lo + 1, sorted.length - 1);
+        return sorted[lo] + (h - lo) * (sorted[hi] - sorted[lo]);
+    }
+}
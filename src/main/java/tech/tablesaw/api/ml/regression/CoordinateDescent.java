@@ -0,0 +1,215 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import com.google.common.base.Preconditions;
+import tech.tablesaw.api.NumberColumn;
+
+/**
+ * Cyclic coordinate descent for the elastic net, minimizing
+ *
+ * (1/2n) ||y - b - Xw||^2 + lambda * ((1 - alpha)/2 ||w||^2 + alpha ||w||_1)
+ *
+ * over standardized explanatory variables. The data are held column-major, one array per variable, so each
+ * coordinate update is a pass over a single contiguous array. The coefficients and residuals are kept between
+ * calls to fit(), so fitting a decreasing sequence of lambdas warm-starts each fit from the previous solution.
+ */
+final class CoordinateDescent {
+
+    private final int n;
+    private final int p;
+    private final double[][] x;
+    private final double[] xMean;
+    private final double[] xScale;
+    private final double yMean;
+    private final double yVariance;
+    private final double[] y;
+
+    private final double[] w;
+    private final double[] residual;
+    private final boolean[] active;
+
+    CoordinateDescent(NumberColumn responseVar, NumberColumn... explanatoryVars) {
+        Preconditions.checkArgument(explanatoryVars.length > 0, "At least one explanatory variable is required");
+        this.n = responseVar.size();
+        this.p = explanatoryVars.length;
+        this.x = new double[p][];
+        this.xMean = new double[p];
+        this.xScale = new double[p];
+
+        for (int j = 0; j < p; j++) {
+            Preconditions.checkArgument(explanatoryVars[j].size() == n,
+                    "Column %s has %s rows, but the response has %s", explanatoryVars[j].name(),
+                    explanatoryVars[j].size(), n);
+            double[] column = explanatoryVars[j].asDoubleArray();
+            double mean = 0;
+            for (double v : column) {
+                mean += v;
+            }
+            mean /= n;
+            double ss = 0;
+            for (int i = 0; i < n; i++) {
+                column[i] -= mean;
+                ss += column[i] * column[i];
+            }
+            double scale = Math.sqrt(ss / n);
+            if (scale > 0) {
+                for (int i = 0; i < n; i++) {
+                    column[i] /= scale;
+                }
+            }
+            x[j] = column;
+            xMean[j] = mean;
+            xScale[j] = scale;
+        }
+
+        this.y = responseVar.asDoubleArray();
+        double mean = 0;
+        for (double v : y) {
+            mean += v;
+        }
+        mean /= n;
+        for (int i = 0; i < n; i++) {
+            y[i] -= mean;
+        }
+        this.yMean = mean;
+        this.yVariance = dot(y, y) / n;
+
+        this.w = new double[p];
+        this.residual = y.clone();
+        this.active = new boolean[p];
+    }
+
+    int explanatoryVariableCount() {
+        return p;
+    }
+
+    /**
+     * Returns the smallest lambda at which all coefficients are zero, for the given alpha
+     */
+    double maxLambda(double alpha) {
+        double max = 0;
+        for (int j = 0; j < p; j++) {
+            max = Math.max(max, Math.abs(dot(x[j], y)) / n);
+        }
+        return max / Math.max(alpha, 1e-3);
+    }
+
+    /**
+     * Fits the model for the given penalty, starting from the current coefficients. Iteration stops when no
+     * squared change in a standardized coefficient exceeds {@code tolerance} times the variance of the response.
+     *
+     * @return the number of full passes over the variables
+     */
+    int fit(double lambda, double alpha, double tolerance, int maxIterations) {
+        double l1 = lambda * alpha;
+        double l2 = lambda * (1 - alpha);
+        int iterations = 0;
+        while (iterations < maxIterations) {
+            // a full sweep decides which variables are active
+            iterations++;
+            boolean changed = sweep(l1, l2, tolerance, false);
+            if (!changed) {
+                break;
+            }
+            // then iterate over the active set alone until it converges
+            while (iterations < maxIterations) {
+                iterations++;
+                if (!sweep(l1, l2, tolerance, true)) {
+                    break;
+                }
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * Updates each coordinate once
+     *
+     * @return true if any coefficient moved by more than the tolerance
+     */
+    private boolean sweep(double l1, double l2, double tolerance, boolean activeOnly) {
+        double maxChange = 0;
+        for (int j = 0; j < p; j++) {
+            if (activeOnly && !active[j]) {
+                continue;
+            }
+            if (xScale[j] == 0) {
+                continue;
+            }
+            double[] column = x[j];
+            double old = w[j];
+            double rho = dot(column, residual) / n + old;
+            double updated = softThreshold(rho, l1) / (1 + l2);
+            if (updated != old) {
+                double delta = updated - old;
+                for (int i = 0; i < n; i++) {
+                    residual[i] -= delta * column[i];
+                }
+                w[j] = updated;
+                maxChange = Math.max(maxChange, delta * delta);
+            }
+            active[j] = updated != 0;
+        }
+        return maxChange > tolerance * yVariance;
+    }
+
+    private static double softThreshold(double value, double threshold) {
+        if (value > threshold) {
+            return value - threshold;
+        } else if (value < -threshold) {
+            return value + threshold;
+        }
+        return 0;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the current coefficients on the scale of the original variables
+     */
+    double[] coefficients() {
+        double[] coefficients = new double[p];
+        for (int j = 0; j < p; j++) {
+            coefficients[j] = xScale[j] == 0 ? 0 : w[j] / xScale[j];
+        }
+        return coefficients;
+    }
+
+    /**
+     * Returns the intercept on the scale of the original variables
+     */
+    double intercept() {
+        double b = yMean;
+        double[] coefficients = coefficients();
+        for (int j = 0; j < p; j++) {
+            b -= coefficients[j] * xMean[j];
+        }
+        return b;
+    }
+
+    /**
+     * Returns the residual sum of squares of the current coefficients
+     */
+    double rss() {
+        return dot(residual, residual);
+    }
+}
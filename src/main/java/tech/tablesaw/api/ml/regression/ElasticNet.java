@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import com.google.common.base.Preconditions;
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Penalized least squares regression: ridge (alpha = 0), lasso (alpha = 1), or a mix of the two.
+ *
+ * The model minimizes (1/2n) ||y - b - Xw||^2 + lambda * ((1 - alpha)/2 ||w||^2 + alpha ||w||_1), with the
+ * explanatory variables standardized internally. Coefficients are reported on the scale of the original variables.
+ */
+public class ElasticNet {
+
+    static final double DEFAULT_TOLERANCE = 1e-9;
+    static final int DEFAULT_MAX_ITERATIONS = 10_000;
+
+    private final String[] explanatoryVariableNames;
+    private final double lambda;
+    private final double alpha;
+    private final double[] coefficients;
+    private final double intercept;
+    private final double RSS;
+
+    private ElasticNet(String[] explanatoryVariableNames, double lambda, double alpha, CoordinateDescent solver) {
+        this.explanatoryVariableNames = explanatoryVariableNames;
+        this.lambda = lambda;
+        this.alpha = alpha;
+        this.coefficients = solver.coefficients();
+        this.intercept = solver.intercept();
+        this.RSS = solver.rss();
+    }
+
+    /**
+     * Fits an elastic net model
+     *
+     * @param lambda the overall strength of the penalty
+     * @param alpha  the share of the penalty given to the L1 (lasso) term, from 0 (ridge) to 1 (lasso)
+     */
+    public static ElasticNet train(double lambda, double alpha, NumberColumn responseVar,
+                                   NumberColumn... explanatoryVars) {
+        checkPenalty(lambda, alpha);
+        CoordinateDescent solver = new CoordinateDescent(responseVar, explanatoryVars);
+        solver.fit(lambda, alpha, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+        return new ElasticNet(names(explanatoryVars), lambda, alpha, solver);
+    }
+
+    /**
+     * Fits a ridge regression, which penalizes the squared size of the coefficients
+     */
+    public static ElasticNet ridge(double lambda, NumberColumn responseVar, NumberColumn... explanatoryVars) {
+        return train(lambda, 0.0, responseVar, explanatoryVars);
+    }
+
+    /**
+     * Fits a lasso regression, which penalizes the absolute size of the coefficients and so sets some of them to
+     * exactly zero
+     */
+    public static ElasticNet lasso(double lambda, NumberColumn responseVar, NumberColumn... explanatoryVars) {
+        return train(lambda, 1.0, responseVar, explanatoryVars);
+    }
+
+    /**
+     * Fits a sequence of models along a regularization path of {@code lambdaCount} log-spaced penalties, from the
+     * smallest lambda at which every coefficient is zero down to 1/1000 of it, or down to 1/100 of it when there are
+     * no more rows than variables, as in glmnet, since the small-lambda fits there are not unique. Each fit starts
+     * from the solution of the one before and only iterates over the variables that are in the model, so the whole
+     * path costs about as much as a single cold fit.
+     *
+     * @param alpha       the share of the penalty given to the L1 (lasso) term, from 0 (ridge) to 1 (lasso)
+     * @param lambdaCount the number of penalties on the path
+     */
+    public static RegularizationPath path(double alpha, int lambdaCount, NumberColumn responseVar,
+                                          NumberColumn... explanatoryVars) {
+        Preconditions.checkArgument(lambdaCount > 1, "A path needs at least two lambdas: %s", lambdaCount);
+        CoordinateDescent solver = new CoordinateDescent(responseVar, explanatoryVars);
+        double max = solver.maxLambda(alpha);
+        double minRatio = responseVar.size() > explanatoryVars.length ? 1e-3 : 1e-2;
+        double[] lambdas = new double[lambdaCount];
+        for (int i = 0; i < lambdaCount; i++) {
+            lambdas[i] = max * Math.pow(minRatio, i / (double) (lambdaCount - 1));
+        }
+        return path(alpha, lambdas, solver, names(explanatoryVars));
+    }
+
+    /**
+     * Fits a sequence of models, one for each of the given penalties, warm-starting each fit from the previous
+     * one. The path is cheapest when the lambdas are in decreasing order.
+     */
+    public static RegularizationPath path(double alpha, double[] lambdas, NumberColumn responseVar,
+                                          NumberColumn... explanatoryVars) {
+        CoordinateDescent solver = new CoordinateDescent(responseVar, explanatoryVars);
+        return path(alpha, lambdas, solver, names(explanatoryVars));
+    }
+
+    private static RegularizationPath path(double alpha, double[] lambdas, CoordinateDescent solver,
+                                           String[] names) {
+        List<ElasticNet> models = new ArrayList<>(lambdas.length);
+        for (double lambda : lambdas) {
+            checkPenalty(lambda, alpha);
+            solver.fit(lambda, alpha, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+            models.add(new ElasticNet(names, lambda, alpha, solver));
+        }
+        return new RegularizationPath(names, models);
+    }
+
+    private static void checkPenalty(double lambda, double alpha) {
+        Preconditions.checkArgument(lambda >= 0, "lambda must be non-negative: %s", lambda);
+        Preconditions.checkArgument(alpha >= 0 && alpha <= 1, "alpha must be in [0, 1]: %s", alpha);
+    }
+
+    private static String[] names(NumberColumn[] columns) {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].name();
+        }
+        return names;
+    }
+
+    public double predict(double[] x) {
+        Preconditions.checkArgument(x.length == coefficients.length,
+                "Invalid input vector size: %s, expected: %s", x.length, coefficients.length);
+        double prediction = intercept;
+        for (int i = 0; i < x.length; i++) {
+            prediction += coefficients[i] * x[i];
+        }
+        return prediction;
+    }
+
+    public double[] coefficients() {
+        return coefficients;
+    }
+
+    public double intercept() {
+        return intercept;
+    }
+
+    public double lambda() {
+        return lambda;
+    }
+
+    public double alpha() {
+        return alpha;
+    }
+
+    public double RSS() {
+        return RSS;
+    }
+
+    /**
+     * Returns the number of coefficients that are not zero
+     */
+    public int nonZeroCount() {
+        int count = 0;
+        for (double coefficient : coefficients) {
+            if (coefficient != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    String[] explanatoryVariableNames() {
+        return explanatoryVariableNames;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Elastic Net (lambda = %.4g, alpha = %.2f):%n", lambda, alpha));
+        builder.append("\nCoefficients:\n");
+        builder.append(String.format("(Intercept)%11.4f%n", intercept));
+        for (int i = 0; i < coefficients.length; i++) {
+            builder.append(String.format("%-10.10s %11.4f%n", explanatoryVariableNames[i], coefficients[i]));
+        }
+        builder.append(String.format("%nResidual sum of squares: %.4f%n", RSS));
+        return builder.toString();
+    }
+}
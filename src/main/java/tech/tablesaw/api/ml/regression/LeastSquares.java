@@ -14,29 +14,126 @@
 
 package tech.tablesaw.api.ml.regression;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import smile.math.matrix.DenseMatrix;
+import smile.math.special.Beta;
 import smile.regression.OLS;
+import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.Table;
 import tech.tablesaw.util.DoubleArrays;
 
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
 public class LeastSquares {
 
-    private final OLS model;
-    private final double[][] explanatoryVariables;
+    /**
+     * The method used to solve the least squares problem
+     */
+    public enum Solver {
+        /**
+         * Smile's single-threaded QR decomposition of the full data matrix
+         */
+        QR,
+        /**
+         * A Cholesky solution of the normal equations, accumulated in parallel. The fastest option, but it squares
+         * the condition number of the problem, so it can lose accuracy when the explanatory variables are nearly
+         * collinear.
+         */
+        NORMAL_EQUATIONS,
+        /**
+         * A parallel tall-skinny QR decomposition, which reduces blocks of rows independently and combines their
+         * triangular factors. As accurate as QR and scales with the number of cores, which makes it the best choice
+         * for very tall data sets.
+         */
+        TSQR
+    }
+
+    private final NumberColumn[] explanatoryColumns;
     private final int explanatoryVariableCount;
-    private final double[] responseVarArray;
+    private final NumberColumn responseColumn;
     private final String[] explanatoryVariableNames;
 
-    public LeastSquares(NumberColumn responseVariable, NumberColumn... explanatoryVars) {
-        this.explanatoryVariables = DoubleArrays.to2dArray(explanatoryVars);
+    private final double[] coefficients;
+    private final double intercept;
+    private final double[][] ttest;
+    private final double RSS;
+    private final double error;
+    private final long df;
+    private final double RSquared;
+    private final double adjustedRSquared;
+    private final double F;
+    private final double pValue;
 
-        this.responseVarArray = responseVariable.asDoubleArray();
-        this.model = new OLS(explanatoryVariables, responseVarArray);
+    public LeastSquares(NumberColumn responseVariable, NumberColumn... explanatoryVars) {
+        // the row-major copy is only needed while smile fits the model; the fitted values and residuals are
+        // computed from a column-major copy of the training columns
+        OLS model = new OLS(DoubleArrays.to2dArray(explanatoryVars), responseVariable.asDoubleArray());
+        this.explanatoryColumns = snapshot(explanatoryVars);
+        this.responseColumn = snapshot(responseVariable);
         this.explanatoryVariableCount = explanatoryVars.length;
-        this.explanatoryVariableNames = new String[explanatoryVariableCount];
+        this.explanatoryVariableNames = names(explanatoryVars);
 
-        for (int i = 0; i < explanatoryVariableCount; i++) {
-            explanatoryVariableNames[i] = explanatoryVars[i].name();
+        this.coefficients = model.coefficients();
+        this.intercept = model.intercept();
+        this.ttest = model.ttest();
+        this.RSS = model.RSS();
+        this.error = model.error();
+        this.df = model.df();
+        this.RSquared = model.RSquared();
+        this.adjustedRSquared = model.adjustedRSquared();
+        this.F = model.ftest();
+        this.pValue = model.pvalue();
+    }
+
+    /**
+     * Creates a model from a solution of the normal equations, for which only the summary statistics of the
+     * data are known
+     *
+     * @param explanatoryColumns a copy of the training columns, or null if they are not available
+     * @param responseColumn     a copy of the training responses, or null if they are not available
+     * @param w                  the coefficients, followed by the intercept
+     * @param unscaledCovariance (X'X)^-1, where the last column of X is the intercept's column of ones
+     * @param rss                the residual sum of squares
+     * @param tss                the total sum of squares
+     * @param n                  the number of observations
+     */
+    private LeastSquares(String[] explanatoryVariableNames,
+                         NumberColumn[] explanatoryColumns,
+                         NumberColumn responseColumn,
+                         double[] w,
+                         double[][] unscaledCovariance,
+                         double rss,
+                         double tss,
+                         long n) {
+
+        int p = explanatoryVariableNames.length;
+        this.explanatoryColumns = explanatoryColumns;
+        this.responseColumn = responseColumn;
+        this.explanatoryVariableCount = p;
+        this.explanatoryVariableNames = explanatoryVariableNames;
+
+        this.coefficients = Arrays.copyOf(w, p);
+        this.intercept = w[p];
+        this.RSS = rss;
+        this.df = n - p - 1;
+        this.error = Math.sqrt(RSS / df);
+        this.RSquared = 1.0 - RSS / tss;
+        this.adjustedRSquared = 1.0 - (1.0 - RSquared) * (n - 1) / df;
+        this.F = (tss - RSS) * df / (RSS * p);
+        this.pValue = Beta.regularizedIncompleteBetaFunction(0.5 * df, 0.5 * p, df / (df + p * F));
+
+        this.ttest = new double[p + 1][4];
+        for (int i = 0; i <= p; i++) {
+            double se = error * Math.sqrt(unscaledCovariance[i][i]);
+            double t = w[i] / se;
+            ttest[i][0] = w[i];
+            ttest[i][1] = se;
+            ttest[i][2] = t;
+            ttest[i][3] = Beta.regularizedIncompleteBetaFunction(0.5 * df, 0.5, df / (df + t * t));
         }
     }
 
@@ -44,84 +141,354 @@ public class LeastSquares {
         return new LeastSquares(responseVar, explanatoryVars);
     }
 
+    /**
+     * Fits a model with the given solver. Every solver produces the same model, up to rounding, and the model
+     * keeps a copy of the training columns, so residuals() and fitted() are available whichever is used.
+     */
+    public static LeastSquares train(Solver solver, NumberColumn responseVar, NumberColumn... explanatoryVars) {
+        switch (solver) {
+            case QR:
+                return new LeastSquares(responseVar, explanatoryVars);
+            case NORMAL_EQUATIONS: {
+                NormalEquations sums = new NormalEquations(explanatoryVars.length);
+                sums.add(responseVar, explanatoryVars);
+                Preconditions.checkArgument(sums.count() > explanatoryVars.length + 1,
+                        "The input is not over determined: %s rows, %s columns",
+                        sums.count(), explanatoryVars.length);
+                DenseMatrix inverse = sums.inverseSxx();
+                double[] w = sums.solve(inverse);
+                return new LeastSquares(names(explanatoryVars), snapshot(explanatoryVars), snapshot(responseVar),
+                        w, sums.unscaledCovariance(inverse), sums.rss(w), sums.tss(), sums.count());
+            }
+            case TSQR: {
+                TallSkinnyQR qr = TallSkinnyQR.decompose(responseVar, explanatoryVars);
+                double[][] inverse = qr.inverseR();
+                return new LeastSquares(names(explanatoryVars), snapshot(explanatoryVars), snapshot(responseVar),
+                        qr.solve(inverse), qr.unscaledCovariance(inverse), qr.rss(), qr.tss(), qr.count());
+            }
+            default:
+                throw new IllegalArgumentException("Unknown solver: " + solver);
+        }
+    }
+
+    /**
+     * Returns a builder that fits a model from chunks of rows, accumulating X'X, X'y and y'y as it goes, so the
+     * rows themselves never need to be held in memory at once. Builders filled from different shards of the data,
+     * possibly on different threads, can be merged before the model is built.
+     *
+     * Because the rows are not retained, models created this way don't support residuals(), fitted() or
+     * actuals().
+     *
+     * @param explanatoryVariableNames the names of the explanatory variables, in the order their columns will be
+     *                                 passed to {@link Builder#add(NumberColumn, NumberColumn...)}
+     */
+    public static Builder builder(String... explanatoryVariableNames) {
+        return new Builder(explanatoryVariableNames);
+    }
+
+    /**
+     * Returns private copies of the columns, so that editing the training table afterwards doesn't change the
+     * residuals, fitted values or bootstrap intervals of the model
+     */
+    private static NumberColumn[] snapshot(NumberColumn[] columns) {
+        NumberColumn[] copies = new NumberColumn[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            copies[i] = snapshot(columns[i]);
+        }
+        return copies;
+    }
+
+    private static NumberColumn snapshot(NumberColumn column) {
+        return DoubleColumn.create(column.name(), column.asDoubleArray());
+    }
+
+    private static String[] names(NumberColumn[] columns) {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].name();
+        }
+        return names;
+    }
+
     @Override
     public String toString() {
-        String result = model.toString();
-        result = result.replace("Intercept", "(Intercept)");
+        StringBuilder builder = new StringBuilder();
+        builder.append("Linear Model:\n");
+
+        if (responseColumn != null) {
+            double[] r = residuals();
+            builder.append("\nResiduals:\n");
+            builder.append("\t       Min\t        1Q\t    Median\t        3Q\t       Max\n");
+            builder.append(String.format("\t%10.4f\t%10.4f\t%10.4f\t%10.4f\t%10.4f%n",
+                    smile.math.Math.min(r), smile.math.Math.q1(r), smile.math.Math.median(r),
+                    smile.math.Math.q3(r), smile.math.Math.max(r)));
+        }
+
+        builder.append("\nCoefficients:\n");
+        builder.append("            Estimate        Std. Error        t value        Pr(>|t|)\n");
+        double[] row = ttest[explanatoryVariableCount];
+        builder.append(String.format("(Intercept)%11.4f%18.4f%15.4f%16.4f %s%n",
+                row[0], row[1], row[2], row[3], significance(row[3])));
 
-        // TODO(lwhite): This hack needed because Smile doesn't name the vars in it's output; we do, by string
-        // replacement.
         int maxNameLength = "(intercept)".length() - 1;
         for (int i = 0; i < explanatoryVariableCount; i++) {
-            String replacement = explanatoryVariableNames[i];
-            if (replacement.length() >= maxNameLength) {
-                replacement = replacement.substring(0, maxNameLength);
+            String name = explanatoryVariableNames[i];
+            if (name.length() >= maxNameLength) {
+                name = name.substring(0, maxNameLength);
             } else {
-                replacement = Strings.padEnd(replacement, maxNameLength, ' ');
+                name = Strings.padEnd(name, maxNameLength, ' ');
             }
-            result = result.replaceFirst("Var " + (i + 1) + '\t', replacement);
+            row = ttest[i];
+            builder.append(String.format("%s %11.4f%18.4f%15.4f%16.4f %s%n",
+                    name, row[0], row[1], row[2], row[3], significance(row[3])));
         }
-        return result;
+
+        builder.append("---------------------------------------------------------------------\n");
+        builder.append("Significance codes:  0 '***' 0.001 '**' 0.01 '*' 0.05 '.' 0.1 ' ' 1\n");
+        builder.append(String.format("%nResidual standard error: %.4f on %d degrees of freedom%n", error, df));
+        builder.append(String.format("Multiple R-squared: %.4f,    Adjusted R-squared: %.4f%n",
+                RSquared, adjustedRSquared));
+        builder.append(String.format("F-statistic: %.4f on %d and %d DF,  p-value: %.4g%n",
+                F, explanatoryVariableCount, df, pValue));
+        return builder.toString();
     }
 
+    private static String significance(double pValue) {
+        if (pValue < 0.001) {
+            return "***";
+        } else if (pValue < 0.01) {
+            return "**";
+        } else if (pValue < 0.05) {
+            return "*";
+        } else if (pValue < 0.1) {
+            return ".";
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * Returns the residuals of the training rows, computed in parallel from the copy of the training columns
+     */
     public double[] residuals() {
-        return model.residuals();
+        checkRowsRetained();
+        double[] residuals = predictions(explanatoryColumns);
+        int rows = residuals.length;
+        IntStream.range(0, blockCount(rows)).parallel().forEach(block -> {
+            int to = Math.min(rows, (block + 1) * NormalEquations.BLOCK_SIZE);
+            for (int i = block * NormalEquations.BLOCK_SIZE; i < to; i++) {
+                residuals[i] = responseColumn.get(i) - residuals[i];
+            }
+        });
+        return residuals;
     }
 
+    /**
+     * Returns the fitted values of the training rows, computed in parallel from the copy of the training columns
+     */
     public double[] fitted() {
-        double[] fitted = new double[explanatoryVariables.length];
-        for (int i = 0; i < explanatoryVariables.length; i++) {
-            double[] input = explanatoryVariables[i];
-            fitted[i] = predict(input);
+        checkRowsRetained();
+        return predictions(explanatoryColumns);
+    }
+
+    /**
+     * Predicts the response for every row of the given columns, which must be in the same order as the columns
+     * the model was trained on
+     *
+     * @return a column of predictions, which can be added to the table the explanatory columns came from
+     */
+    public DoubleColumn predict(NumberColumn... explanatoryVars) {
+        return DoubleColumn.create("Predicted", predictions(explanatoryVars));
+    }
+
+    /**
+     * Computes the intercept plus the dot product of the coefficients with each row. The rows are split into
+     * blocks that are scored in parallel, and within a block the columns are visited one at a time, so each pass
+     * reads a single column sequentially.
+     */
+    private double[] predictions(NumberColumn[] explanatoryVars) {
+        Preconditions.checkArgument(explanatoryVars.length == explanatoryVariableCount,
+                "Expected %s explanatory variables but got %s", explanatoryVariableCount, explanatoryVars.length);
+        int rows = explanatoryVars[0].size();
+        for (NumberColumn column : explanatoryVars) {
+            Preconditions.checkArgument(column.size() == rows,
+                    "Column %s has %s rows, but %s has %s", column.name(), column.size(),
+                    explanatoryVars[0].name(), rows);
         }
-        return fitted;
+        double[] predictions = new double[rows];
+        IntStream.range(0, blockCount(rows)).parallel().forEach(block -> {
+            int from = block * NormalEquations.BLOCK_SIZE;
+            int to = Math.min(rows, from + NormalEquations.BLOCK_SIZE);
+            Arrays.fill(predictions, from, to, intercept);
+            for (int j = 0; j < explanatoryVariableCount; j++) {
+                NumberColumn column = explanatoryVars[j];
+                double coefficient = coefficients[j];
+                for (int i = from; i < to; i++) {
+                    predictions[i] += coefficient * column.get(i);
+                }
+            }
+        });
+        return predictions;
+    }
+
+    private static int blockCount(int rows) {
+        return (rows + NormalEquations.BLOCK_SIZE - 1) / NormalEquations.BLOCK_SIZE;
     }
 
     public double adjustedRSquared() {
-        return model.adjustedRSquared();
+        return adjustedRSquared;
     }
 
     public double df() {
-        return model.df();
+        return df;
     }
 
     public double error() {
-        return model.error();
+        return error;
     }
 
     public double ftest() {
-        return model.ftest();
+        return F;
     }
 
     public double pValue() {
-        return model.pvalue();
+        return pValue;
     }
 
     public double intercept() {
-        return model.intercept();
+        return intercept;
     }
 
     public double RSquared() {
-        return model.RSquared();
+        return RSquared;
     }
 
     public double RSS() {
-        return model.RSS();
+        return RSS;
     }
 
     public double[][] ttest() {
-        return model.ttest();
+        return ttest;
     }
 
     public double predict(double[] x) {
-        return model.predict(x);
+        Preconditions.checkArgument(x.length == explanatoryVariableCount,
+                "Invalid input vector size: %s, expected: %s", x.length, explanatoryVariableCount);
+        return intercept + smile.math.Math.dot(x, coefficients);
     }
 
     public double[] coefficients() {
-        return model.coefficients();
+        return coefficients;
+    }
+
+    /**
+     * Returns percentile bootstrap confidence intervals for the intercept and coefficients, which don't rely on
+     * the residuals being normally distributed, as the t-tests do. See
+     * {@link #bootstrap(int, double, long)}.
+     */
+    public Table bootstrap(int resamples, double confidenceLevel) {
+        return bootstrap(resamples, confidenceLevel, new Random().nextLong());
+    }
+
+    /**
+     * Returns percentile bootstrap confidence intervals for the intercept and coefficients, which don't rely on
+     * the residuals being normally distributed, as the t-tests do. The model is refit to each resample of the
+     * training rows, with the resamples fit in parallel.
+     *
+     * @param resamples       the number of bootstrap resamples, typically a few hundred to a few thousand
+     * @param confidenceLevel the coverage of the intervals, e.g. 0.95
+     * @param seed            the seed of the random resampling; the same seed always gives the same intervals
+     * @return a table with a row for each term, and columns for its estimate, bootstrap standard error, and
+     * lower and upper bounds
+     */
+    public Table bootstrap(int resamples, double confidenceLevel, long seed) {
+        checkRowsRetained();
+        Preconditions.checkArgument(resamples > 1, "At least two resamples are required: %s", resamples);
+        Preconditions.checkArgument(confidenceLevel > 0 && confidenceLevel < 1,
+                "The confidence level must be in (0, 1): %s", confidenceLevel);
+        return BootstrapIntervals.compute(this, responseColumn, explanatoryColumns, resamples, confidenceLevel,
+                seed);
+    }
+
+    String[] explanatoryVariableNames() {
+        return explanatoryVariableNames;
     }
 
     public double[] actuals() {
-        return responseVarArray;
+        checkRowsRetained();
+        return responseColumn.asDoubleArray();
+    }
+
+    private void checkRowsRetained() {
+        if (responseColumn == null) {
+            throw new IllegalStateException("The training rows are not available for a model built from "
+                    + "accumulated sums");
+        }
+    }
+
+    /**
+     * Accumulates the sums needed to fit a least squares model, one chunk of rows at a time
+     */
+    public static class Builder {
+
+        private final String[] explanatoryVariableNames;
+        private final NormalEquations sums;
+
+        private Builder(String[] explanatoryVariableNames) {
+            Preconditions.checkArgument(explanatoryVariableNames.length > 0,
+                    "At least one explanatory variable is required");
+            this.explanatoryVariableNames = explanatoryVariableNames.clone();
+            this.sums = new NormalEquations(explanatoryVariableNames.length);
+        }
+
+        /**
+         * Adds a chunk of rows to the model. The rows are summed in parallel blocks and are not retained.
+         *
+         * @param responseVariable the response values for this chunk
+         * @param explanatoryVars  the explanatory values for this chunk, in the order given to the builder
+         */
+        public Builder add(NumberColumn responseVariable, NumberColumn... explanatoryVars) {
+            sums.add(responseVariable, explanatoryVars);
+            return this;
+        }
+
+        /**
+         * Adds the rows accumulated by another builder, typically one filled from a different shard of the data
+         */
+        public Builder merge(Builder other) {
+            Preconditions.checkArgument(Arrays.equals(explanatoryVariableNames, other.explanatoryVariableNames),
+                    "Cannot merge builders for different explanatory variables");
+            sums.merge(other.sums);
+            return this;
+        }
+
+        /**
+         * Returns the number of rows added so far
+         */
+        public long rowCount() {
+            return sums.count();
+        }
+
+        /**
+         * Solves the accumulated normal equations, by Cholesky decomposition if possible and by QR decomposition
+         * otherwise
+         *
+         * @throws IllegalStateException if the explanatory variables are collinear
+         */
+        public LeastSquares build() {
+            Preconditions.checkState(sums.count() > explanatoryVariableNames.length + 1,
+                    "The input is not over determined: %s rows, %s columns",
+                    sums.count(), explanatoryVariableNames.length);
+            DenseMatrix inverse = sums.inverseSxx();
+            double[] w = sums.solve(inverse);
+            return new LeastSquares(explanatoryVariableNames.clone(),
+                    null,
+                    null,
+                    w,
+                    sums.unscaledCovariance(inverse),
+                    sums.rss(w),
+                    sums.tss(),
+                    sums.count());
+        }
     }
 }
@@ -0,0 +1,291 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import com.google.common.base.Preconditions;
+import smile.math.matrix.DenseMatrix;
+import smile.math.matrix.Matrix;
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Accumulates the sufficient statistics of a least squares problem (X'X, X'y and y'y) without holding the rows.
+ *
+ * The cross products are kept centered on the running means, which is the numerically stable form of the same
+ * sums, and two accumulations over different rows can be merged. That lets each chunk of a large data set be
+ * summed on its own thread, or its own machine, and combined at the end.
+ */
+final class NormalEquations {
+
+    /**
+     * The number of rows summed by a single task when a chunk is accumulated in parallel
+     */
+    static final int BLOCK_SIZE = 8192;
+
+    private final int p;
+    private long n;
+    private final double[] xMean;
+    private double yMean;
+    private final double[][] sxx;
+    private final double[] sxy;
+    private double syy;
+
+    private final double[] dx;
+
+    NormalEquations(int explanatoryVariableCount) {
+        this.p = explanatoryVariableCount;
+        this.xMean = new double[p];
+        this.sxx = new double[p][p];
+        this.sxy = new double[p];
+        this.dx = new double[p];
+    }
+
+    int explanatoryVariableCount() {
+        return p;
+    }
+
+    long count() {
+        return n;
+    }
+
+    double[] xMeans() {
+        return xMean;
+    }
+
+    double yMean() {
+        return yMean;
+    }
+
+    /**
+     * Returns the total sum of squares of the response around its mean
+     */
+    double tss() {
+        return syy;
+    }
+
+    /**
+     * Adds a single observation
+     */
+    void add(double y, double[] x) {
+        n++;
+        double f = (n - 1) / (double) n;
+        for (int i = 0; i < p; i++) {
+            dx[i] = x[i] - xMean[i];
+        }
+        double dy = y - yMean;
+        for (int i = 0; i < p; i++) {
+            double fdx = f * dx[i];
+            double[] row = sxx[i];
+            for (int j = 0; j <= i; j++) {
+                row[j] += fdx * dx[j];
+            }
+            sxy[i] += fdx * dy;
+        }
+        syy += f * dy * dy;
+        for (int i = 0; i < p; i++) {
+            xMean[i] += dx[i] / n;
+        }
+        yMean += dy / n;
+    }
+
+    /**
+     * Adds the rows in [from, to) of the given columns
+     */
+    void add(NumberColumn response, NumberColumn[] explanatory, int from, int to) {
+        double[] x = new double[p];
+        for (int row = from; row < to; row++) {
+            for (int j = 0; j < p; j++) {
+                x[j] = explanatory[j].get(row);
+            }
+            add(response.get(row), x);
+        }
+    }
+
+    /**
+     * Adds every row of the given columns, summing blocks of rows in parallel and merging the partial results
+     */
+    void add(NumberColumn response, NumberColumn... explanatory) {
+        Preconditions.checkArgument(explanatory.length == p,
+                "Expected %s explanatory variables but got %s", p, explanatory.length);
+        int rows = response.size();
+        for (NumberColumn column : explanatory) {
+            Preconditions.checkArgument(column.size() == rows,
+                    "Column %s has %s rows, but the response has %s", column.name(), column.size(), rows);
+        }
+        int blocks = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        NormalEquations chunk = IntStream.range(0, blocks).parallel().collect(
+                () -> new NormalEquations(p),
+                (sums, block) -> sums.add(response, explanatory,
+                        block * BLOCK_SIZE, Math.min(rows, (block + 1) * BLOCK_SIZE)),
+                NormalEquations::merge);
+        merge(chunk);
+    }
+
+    /**
+     * Merges the sums accumulated by {@code other} into this one
+     */
+    NormalEquations merge(NormalEquations other) {
+        Preconditions.checkArgument(other.p == p,
+                "Cannot merge sums over %s explanatory variables with sums over %s", other.p, p);
+        if (other.n == 0) {
+            return this;
+        }
+        if (n == 0) {
+            n = other.n;
+            yMean = other.yMean;
+            syy = other.syy;
+            System.arraycopy(other.xMean, 0, xMean, 0, p);
+            System.arraycopy(other.sxy, 0, sxy, 0, p);
+            for (int i = 0; i < p; i++) {
+                System.arraycopy(other.sxx[i], 0, sxx[i], 0, i + 1);
+            }
+            return this;
+        }
+        long total = n + other.n;
+        double f = (double) n * other.n / total;
+        double w = other.n / (double) total;
+        for (int i = 0; i < p; i++) {
+            dx[i] = other.xMean[i] - xMean[i];
+        }
+        double dy = other.yMean - yMean;
+        for (int i = 0; i < p; i++) {
+            double fdx = f * dx[i];
+            double[] row = sxx[i];
+            double[] otherRow = other.sxx[i];
+            for (int j = 0; j <= i; j++) {
+                row[j] += otherRow[j] + fdx * dx[j];
+            }
+            sxy[i] += other.sxy[i] + fdx * dy;
+        }
+        syy += other.syy + f * dy * dy;
+        for (int i = 0; i < p; i++) {
+            xMean[i] += dx[i] * w;
+        }
+        yMean += dy * w;
+        n = total;
+        return this;
+    }
+
+    /**
+     * Clears the sums so the accumulator can be reused
+     */
+    void clear() {
+        n = 0;
+        yMean = 0;
+        syy = 0;
+        for (int i = 0; i < p; i++) {
+            xMean[i] = 0;
+            sxy[i] = 0;
+            Arrays.fill(sxx[i], 0);
+        }
+    }
+
+    /**
+     * Returns the inverse of the centered cross-product matrix, by Cholesky decomposition or, when rounding has
+     * left the matrix not quite positive definite, by QR decomposition
+     *
+     * @throws IllegalStateException if the explanatory variables are collinear
+     */
+    DenseMatrix inverseSxx() {
+        double[][] a = new double[p][p];
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j <= i; j++) {
+                a[i][j] = sxx[i][j];
+                a[j][i] = sxx[i][j];
+            }
+        }
+        try {
+            DenseMatrix inverse = Matrix.newInstance(a).cholesky().inverse();
+            if (hasPositiveDiagonal(inverse)) {
+                return inverse;
+            }
+        } catch (IllegalArgumentException notPositiveDefinite) {
+            // fall back to QR below
+        }
+        DenseMatrix inverse = Matrix.eye(p);
+        try {
+            Matrix.newInstance(a).qr().solve(inverse);
+        } catch (RuntimeException rankDeficient) {
+            throw new IllegalStateException("The explanatory variables are not of full rank", rankDeficient);
+        }
+        if (!hasPositiveDiagonal(inverse)) {
+            throw new IllegalStateException("The explanatory variables are not of full rank");
+        }
+        return inverse;
+    }
+
+    private static boolean hasPositiveDiagonal(DenseMatrix matrix) {
+        for (int i = 0; i < matrix.nrows(); i++) {
+            double d = matrix.get(i, i);
+            if (!(d > 0) || Double.isInfinite(d)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Solves the normal equations, returning the coefficients followed by the intercept
+     */
+    double[] solve(DenseMatrix inverseSxx) {
+        double[] w = new double[p + 1];
+        double b = yMean;
+        for (int i = 0; i < p; i++) {
+            double wi = 0;
+            for (int j = 0; j < p; j++) {
+                wi += inverseSxx.get(i, j) * sxy[j];
+            }
+            w[i] = wi;
+            b -= wi * xMean[i];
+        }
+        w[p] = b;
+        return w;
+    }
+
+    /**
+     * Returns the residual sum of squares of the given solution
+     */
+    double rss(double[] w) {
+        double explained = 0;
+        for (int i = 0; i < p; i++) {
+            explained += w[i] * sxy[i];
+        }
+        return Math.max(0.0, syy - explained);
+    }
+
+    /**
+     * Returns (X'X)^-1 for X with a trailing column of ones, given the inverse of the centered cross products
+     */
+    double[][] unscaledCovariance(DenseMatrix inverseSxx) {
+        double[][] cov = new double[p + 1][p + 1];
+        double[] sMean = new double[p];
+        double meanSMean = 0;
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j < p; j++) {
+                cov[i][j] = inverseSxx.get(i, j);
+                sMean[i] += cov[i][j] * xMean[j];
+            }
+            meanSMean += xMean[i] * sMean[i];
+        }
+        for (int i = 0; i < p; i++) {
+            cov[i][p] = -sMean[i];
+            cov[p][i] = -sMean[i];
+        }
+        cov[p][p] = 1.0 / n + meanSMean;
+        return cov;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import com.google.common.base.Preconditions;
+import smile.math.matrix.DenseMatrix;
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.Arrays;
+
+/**
+ * An online least squares regression that updates its coefficients as new rows arrive, without revisiting the
+ * rows it has already seen.
+ *
+ * Each row costs O(d^2) for d explanatory variables. An optional forgetting factor below 1 discounts older rows
+ * geometrically, so the model tracks a relationship that drifts over time.
+ */
+public class RecursiveLeastSquares {
+
+    /**
+     * The initial diagonal of the inverse covariance when the model starts without any training rows
+     */
+    private static final double DIFFUSE_PRIOR = 1.0e8;
+
+    private final String[] explanatoryVariableNames;
+    private final int p;
+    private final double forgettingFactor;
+
+    // the coefficients, followed by the intercept
+    private final double[] w;
+
+    // the (scaled) inverse of X'X, where the last column of X is the intercept's column of ones
+    private final double[][] P;
+
+    private final double[] x;
+    private final double[] px;
+    private long rowCount;
+
+    /**
+     * Creates a model that has not seen any rows, starting from zero coefficients and a diffuse prior
+     *
+     * @param forgettingFactor the weight, in (0, 1], given to the existing rows each time a new row arrives
+     * @param explanatoryVariableNames the names of the explanatory variables, in the order their values will be
+     *                                 passed to update()
+     */
+    public RecursiveLeastSquares(double forgettingFactor, String... explanatoryVariableNames) {
+        Preconditions.checkArgument(forgettingFactor > 0 && forgettingFactor <= 1,
+                "The forgetting factor must be in (0, 1]: %s", forgettingFactor);
+        Preconditions.checkArgument(explanatoryVariableNames.length > 0,
+                "At least one explanatory variable is required");
+        this.explanatoryVariableNames = explanatoryVariableNames.clone();
+        this.p = explanatoryVariableNames.length;
+        this.forgettingFactor = forgettingFactor;
+        this.w = new double[p + 1];
+        this.P = new double[p + 1][p + 1];
+        this.x = new double[p + 1];
+        this.px = new double[p + 1];
+        for (int i = 0; i <= p; i++) {
+            P[i][i] = DIFFUSE_PRIOR;
+        }
+    }
+
+    /**
+     * Fits the initial model exactly from the given rows, after which it can be updated with new ones
+     */
+    public static RecursiveLeastSquares train(NumberColumn responseVar, NumberColumn... explanatoryVars) {
+        return train(1.0, responseVar, explanatoryVars);
+    }
+
+    /**
+     * Fits the initial model exactly from the given rows, after which it can be updated with new ones
+     *
+     * @param forgettingFactor the weight, in (0, 1], given to the existing rows each time a new row arrives
+     */
+    public static RecursiveLeastSquares train(double forgettingFactor,
+                                              NumberColumn responseVar,
+                                              NumberColumn... explanatoryVars) {
+
+        String[] names = new String[explanatoryVars.length];
+        for (int i = 0; i < explanatoryVars.length; i++) {
+            names[i] = explanatoryVars[i].name();
+        }
+        RecursiveLeastSquares model = new RecursiveLeastSquares(forgettingFactor, names);
+
+        NormalEquations sums = new NormalEquations(explanatoryVars.length);
+        sums.add(responseVar, explanatoryVars);
+        Preconditions.checkArgument(sums.count() > explanatoryVars.length + 1,
+                "The input is not over determined: %s rows, %s columns", sums.count(), explanatoryVars.length);
+
+        DenseMatrix inverse = sums.inverseSxx();
+        double[] solution = sums.solve(inverse);
+        double[][] covariance = sums.unscaledCovariance(inverse);
+        System.arraycopy(solution, 0, model.w, 0, solution.length);
+        for (int i = 0; i < covariance.length; i++) {
+            System.arraycopy(covariance[i], 0, model.P[i], 0, covariance.length);
+        }
+        model.rowCount = sums.count();
+        return model;
+    }
+
+    /**
+     * Updates the model with a batch of appended rows, one row at a time
+     */
+    public RecursiveLeastSquares update(NumberColumn responseVar, NumberColumn... explanatoryVars) {
+        Preconditions.checkArgument(explanatoryVars.length == p,
+                "Expected %s explanatory variables but got %s", p, explanatoryVars.length);
+        int rows = responseVar.size();
+        for (NumberColumn column : explanatoryVars) {
+            Preconditions.checkArgument(column.size() == rows,
+                    "Column %s has %s rows, but the response has %s", column.name(), column.size(), rows);
+        }
+        double[] row = new double[p];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < p; j++) {
+                row[j] = explanatoryVars[j].get(i);
+            }
+            update(responseVar.get(i), row);
+        }
+        return this;
+    }
+
+    /**
+     * Updates the model with a single new row
+     *
+     * @param y           the response value
+     * @param explanatory the explanatory values, in the order of the model's variables
+     */
+    public void update(double y, double[] explanatory) {
+        Preconditions.checkArgument(explanatory.length == p,
+                "Invalid input vector size: %s, expected: %s", explanatory.length, p);
+        System.arraycopy(explanatory, 0, x, 0, p);
+        x[p] = 1.0;
+
+        double denominator = forgettingFactor;
+        double prediction = 0;
+        for (int i = 0; i <= p; i++) {
+            double[] row = P[i];
+            double sum = 0;
+            for (int j = 0; j <= p; j++) {
+                sum += row[j] * x[j];
+            }
+            px[i] = sum;
+            denominator += x[i] * sum;
+            prediction += w[i] * x[i];
+        }
+
+        double error = y - prediction;
+        for (int i = 0; i <= p; i++) {
+            w[i] += px[i] * error / denominator;
+        }
+        for (int i = 0; i <= p; i++) {
+            double[] row = P[i];
+            double scaled = px[i] / denominator;
+            for (int j = 0; j <= p; j++) {
+                row[j] = (row[j] - scaled * px[j]) / forgettingFactor;
+            }
+        }
+        rowCount++;
+    }
+
+    public double predict(double[] explanatory) {
+        Preconditions.checkArgument(explanatory.length == p,
+                "Invalid input vector size: %s, expected: %s", explanatory.length, p);
+        double prediction = w[p];
+        for (int i = 0; i < p; i++) {
+            prediction += w[i] * explanatory[i];
+        }
+        return prediction;
+    }
+
+    public double[] coefficients() {
+        return Arrays.copyOf(w, p);
+    }
+
+    public double intercept() {
+        return w[p];
+    }
+
+    public double forgettingFactor() {
+        return forgettingFactor;
+    }
+
+    /**
+     * Returns the number of rows the model has seen, including those used to train it
+     */
+    public long rowCount() {
+        return rowCount;
+    }
+
+    public String[] explanatoryVariableNames() {
+        return explanatoryVariableNames.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Recursive Least Squares (forgetting factor %.4f, %d rows):%n",
+                forgettingFactor, rowCount));
+        builder.append(String.format("(Intercept)%11.4f%n", w[p]));
+        for (int i = 0; i < p; i++) {
+            builder.append(String.format("%-10.10s %11.4f%n", explanatoryVariableNames[i], w[i]));
+        }
+        return builder.toString();
+    }
+}
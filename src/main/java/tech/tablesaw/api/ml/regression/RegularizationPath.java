@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.List;
+
+/**
+ * The sequence of elastic net models fitted over a range of penalties
+ */
+public class RegularizationPath {
+
+    private final String[] explanatoryVariableNames;
+    private final List<ElasticNet> models;
+
+    RegularizationPath(String[] explanatoryVariableNames, List<ElasticNet> models) {
+        this.explanatoryVariableNames = explanatoryVariableNames;
+        this.models = models;
+    }
+
+    public int size() {
+        return models.size();
+    }
+
+    public ElasticNet get(int i) {
+        return models.get(i);
+    }
+
+    public List<ElasticNet> models() {
+        return models;
+    }
+
+    public double[] lambdas() {
+        double[] lambdas = new double[models.size()];
+        for (int i = 0; i < lambdas.length; i++) {
+            lambdas[i] = models.get(i).lambda();
+        }
+        return lambdas;
+    }
+
+    /**
+     * Returns the path as a table with one row per lambda, and columns for the intercept, each coefficient, the
+     * residual sum of squares and the number of non-zero coefficients
+     */
+    public Table toTable() {
+        Table table = Table.create("Regularization Path");
+        NumberColumn lambda = DoubleColumn.create("Lambda");
+        NumberColumn intercept = DoubleColumn.create("(Intercept)");
+        table.addColumns(lambda, intercept);
+        for (String name : explanatoryVariableNames) {
+            table.addColumns(DoubleColumn.create(name));
+        }
+        NumberColumn rss = DoubleColumn.create("RSS");
+        NumberColumn nonZero = DoubleColumn.create("Non-zero");
+        table.addColumns(rss, nonZero);
+
+        for (ElasticNet model : models) {
+            lambda.append(model.lambda());
+            intercept.append(model.intercept());
+            double[] coefficients = model.coefficients();
+            for (int i = 0; i < coefficients.length; i++) {
+                table.numberColumn(i + 2).append(coefficients[i]);
+            }
+            rss.append(model.RSS());
+            nonZero.append(model.nonZeroCount());
+        }
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return toTable().toString();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import com.google.common.base.Preconditions;
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.stream.IntStream;
+
+/**
+ * A communication-avoiding (tall-skinny) QR decomposition of the augmented matrix [1 X y].
+ *
+ * Each block of rows is reduced by Householder reflections to a small upper triangular factor, stacked under the
+ * factor of the rows seen before it. Blocks are reduced in parallel and the partial factors are combined pairwise
+ * as the parallel tasks join, so only (d + 2)^2 values ever pass between threads. Since the factor is computed
+ * from the data itself rather than from X'X, its accuracy depends on the condition of X, not of X'X.
+ *
+ * Q is never formed. With the intercept first and the response last, the final factor R gives everything the
+ * model needs: the coefficients solve the leading triangle against the last column, the square of the last
+ * diagonal entry is the residual sum of squares, and the last column below the first row holds the response
+ * after the intercept has been removed, so its squared length is the total sum of squares.
+ */
+final class TallSkinnyQR {
+
+    /**
+     * A diagonal entry of R this small, relative to the length of its column, means the column is a linear
+     * combination of the columns before it
+     */
+    private static final double RANK_TOLERANCE = 1e-10;
+
+    private final int p;
+    private final int m;
+    private long n;
+
+    // the upper triangular factor, m x m, row-major; null until a row has been added
+    private double[][] r;
+
+    private TallSkinnyQR(int explanatoryVariableCount) {
+        this.p = explanatoryVariableCount;
+        this.m = p + 2;
+    }
+
+    /**
+     * Decomposes every row of the given columns, reducing blocks of rows in parallel
+     */
+    static TallSkinnyQR decompose(NumberColumn response, NumberColumn... explanatory) {
+        int p = explanatory.length;
+        int rows = response.size();
+        for (NumberColumn column : explanatory) {
+            Preconditions.checkArgument(column.size() == rows,
+                    "Column %s has %s rows, but the response has %s", column.name(), column.size(), rows);
+        }
+        Preconditions.checkArgument(rows > p + 1,
+                "The input is not over determined: %s rows, %s columns", rows, p);
+
+        // each task factors at least a few times as many rows as there are columns, or the stacking costs more
+        // than the block itself
+        int blockSize = Math.max(NormalEquations.BLOCK_SIZE, 4 * (p + 2));
+        int blocks = (rows + blockSize - 1) / blockSize;
+        return IntStream.range(0, blocks).parallel().collect(
+                () -> new TallSkinnyQR(p),
+                (qr, block) -> qr.add(response, explanatory,
+                        block * blockSize, Math.min(rows, (block + 1) * blockSize)),
+                TallSkinnyQR::merge);
+    }
+
+    /**
+     * Folds the rows in [from, to) of the given columns into the factor
+     */
+    private void add(NumberColumn response, NumberColumn[] explanatory, int from, int to) {
+        int stacked = r == null ? 0 : m;
+        int height = stacked + to - from;
+
+        // column-major, so each reflection is applied one contiguous column at a time
+        double[][] a = new double[m][height];
+        for (int i = 0; i < stacked; i++) {
+            for (int j = i; j < m; j++) {
+                a[j][i] = r[i][j];
+            }
+        }
+        for (int i = stacked; i < height; i++) {
+            a[0][i] = 1.0;
+        }
+        for (int j = 0; j < p; j++) {
+            NumberColumn column = explanatory[j];
+            double[] values = a[j + 1];
+            for (int row = from; row < to; row++) {
+                values[stacked + row - from] = column.get(row);
+            }
+        }
+        double[] y = a[m - 1];
+        for (int row = from; row < to; row++) {
+            y[stacked + row - from] = response.get(row);
+        }
+
+        r = triangularize(a, height);
+        n += to - from;
+    }
+
+    /**
+     * Combines the factor of another set of rows with this one
+     */
+    private void merge(TallSkinnyQR other) {
+        if (other.r == null) {
+            return;
+        }
+        if (r == null) {
+            r = other.r;
+            n = other.n;
+            return;
+        }
+        double[][] a = new double[m][2 * m];
+        for (int i = 0; i < m; i++) {
+            for (int j = i; j < m; j++) {
+                a[j][i] = r[i][j];
+                a[j][m + i] = other.r[i][j];
+            }
+        }
+        r = triangularize(a, 2 * m);
+        n += other.n;
+    }
+
+    /**
+     * Reduces the column-major matrix {@code a} to upper triangular form by Householder reflections, destroying
+     * it in the process
+     *
+     * @return the m x m triangular factor, row-major
+     */
+    private double[][] triangularize(double[][] a, int height) {
+        double[][] result = new double[m][m];
+        int steps = Math.min(m, height);
+        for (int k = 0; k < steps; k++) {
+            double[] v = a[k];
+            double norm = norm(v, k, height);
+            if (norm == 0) {
+                for (int j = k + 1; j < m; j++) {
+                    result[k][j] = a[j][k];
+                }
+                continue;
+            }
+            // reflect the column onto -sign(v[k]) * norm * e_k, which avoids cancellation in v[k] - alpha
+            double alpha = v[k] > 0 ? -norm : norm;
+            v[k] -= alpha;
+            double vv = norm * (norm + Math.abs(v[k] + alpha));
+            for (int j = k + 1; j < m; j++) {
+                double[] column = a[j];
+                double dot = 0;
+                for (int i = k; i < height; i++) {
+                    dot += v[i] * column[i];
+                }
+                double scale = dot / vv;
+                for (int i = k; i < height; i++) {
+                    column[i] -= scale * v[i];
+                }
+                result[k][j] = column[k];
+            }
+            result[k][k] = alpha;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Euclidean norm of v[from, to). The values are divided by the largest magnitude before they are
+     * squared, so the sum neither overflows nor underflows, as in LAPACK's dnrm2, and both loops are plain passes
+     * over the array rather than a Math.hypot call per element.
+     */
+    private static double norm(double[] v, int from, int to) {
+        double scale = 0;
+        for (int i = from; i < to; i++) {
+            scale = Math.max(scale, Math.abs(v[i]));
+        }
+        if (scale == 0 || Double.isInfinite(scale) || Double.isNaN(scale)) {
+            return scale;
+        }
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double x = v[i] / scale;
+            sum += x * x;
+        }
+        return scale * Math.sqrt(sum);
+    }
+
+    long count() {
+        return n;
+    }
+
+    /**
+     * Returns the residual sum of squares of the least squares fit
+     */
+    double rss() {
+        return r[m - 1][m - 1] * r[m - 1][m - 1];
+    }
+
+    /**
+     * Returns the total sum of squares of the response around its mean
+     */
+    double tss() {
+        double tss = 0;
+        for (int i = 1; i < m; i++) {
+            tss += r[i][m - 1] * r[i][m - 1];
+        }
+        return tss;
+    }
+
+    /**
+     * Returns the inverse of the leading (p + 1) x (p + 1) triangle of R, which is also upper triangular
+     *
+     * @throws IllegalStateException if the explanatory variables are collinear
+     */
+    double[][] inverseR() {
+        int d = p + 1;
+        double[] column = new double[d];
+        for (int k = 0; k < d; k++) {
+            for (int i = 0; i <= k; i++) {
+                column[i] = r[i][k];
+            }
+            double length = norm(column, 0, k + 1);
+            if (Math.abs(r[k][k]) <= RANK_TOLERANCE * length) {
+                throw new IllegalStateException("The explanatory variables are not of full rank");
+            }
+        }
+        double[][] inverse = new double[d][d];
+        for (int j = 0; j < d; j++) {
+            inverse[j][j] = 1.0 / r[j][j];
+            for (int i = j - 1; i >= 0; i--) {
+                double sum = 0;
+                for (int k = i + 1; k <= j; k++) {
+                    sum += r[i][k] * inverse[k][j];
+                }
+                inverse[i][j] = -sum / r[i][i];
+            }
+        }
+        return inverse;
+    }
+
+    /**
+     * Returns the solution, with the coefficients first and the intercept last
+     */
+    double[] solve(double[][] inverseR) {
+        int d = p + 1;
+        double[] w = new double[d];
+        for (int i = 0; i < d; i++) {
+            double sum = 0;
+            for (int k = i; k < d; k++) {
+                sum += inverseR[i][k] * r[k][m - 1];
+            }
+            w[modelIndex(i)] = sum;
+        }
+        return w;
+    }
+
+    /**
+     * Returns (X'X)^-1 = R^-1 R^-T, ordered with the coefficients first and the intercept last
+     */
+    double[][] unscaledCovariance(double[][] inverseR) {
+        int d = p + 1;
+        double[][] covariance = new double[d][d];
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = 0;
+                for (int k = i; k < d; k++) {
+                    sum += inverseR[i][k] * inverseR[j][k];
+                }
+                covariance[modelIndex(i)][modelIndex(j)] = sum;
+                covariance[modelIndex(j)][modelIndex(i)] = sum;
+            }
+        }
+        return covariance;
+    }
+
+    /**
+     * Maps a column of the decomposition, where the intercept comes first, to its position in the model, where
+     * it comes last
+     */
+    private int modelIndex(int column) {
+        return column == 0 ? p : column - 1;
+    }
+}
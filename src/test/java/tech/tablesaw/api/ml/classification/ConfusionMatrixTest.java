@@ -20,8 +20,13 @@ import tech.tablesaw.api.Row;
 import tech.tablesaw.api.Table;
 import tech.tablesaw.util.DoubleArrays;
 
+import java.util.Arrays;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ConfusionMatrixTest {
 
@@ -49,4 +54,113 @@ public class ConfusionMatrixTest {
             confusion.increment((int) test.numberColumn(2).get(row.getRowNumber()), predicted[row.getRowNumber()]);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCountsGrowAndFallBackToSparse() {
+        SortedSet<Object> labels = new TreeSet<>(Arrays.asList(0, 1));
+        StandardConfusionMatrix confusion = new StandardConfusionMatrix(labels);
+        confusion.increment(0, 0);
+        confusion.increment(1, 1);
+        confusion.increment(1, 0);
+        assertEquals(2 / 3.0, confusion.accuracy(), 1e-12);
+
+        // a code past the declared labels grows the dense counts, and a huge one moves them to a map
+        confusion.increment(5, 5);
+        assertEquals(3 / 4.0, confusion.accuracy(), 1e-12);
+        confusion.increment(1_000_000, 0);
+        assertEquals(3 / 5.0, confusion.accuracy(), 1e-12);
+        assertEquals(1, confusion.counts.get(1, 0));
+        assertEquals(1, confusion.counts.get(1_000_000, 0));
+
+        Table table = confusion.toTable();
+        assertEquals("n = 5", table.column(0).name());
+        assertEquals(4, table.rowCount());
+        assertEquals(1.0, table.numberColumn(1).get(1), 0.0);
+    }
+
+    @Test
+    public void testDenseCountsStartSmall() {
+        SortedSet<Object> labels = new TreeSet<>();
+        for (int code = 0; code < 200; code++) {
+            labels.add(code);
+        }
+        StandardConfusionMatrix confusion = new StandardConfusionMatrix(labels);
+        assertTrue(confusion.counts.denseClasses() < 200);
+        confusion.increment(3, 3);
+        assertTrue(confusion.counts.denseClasses() < 200);
+
+        confusion.increment(199, 3);
+        assertEquals(200, confusion.counts.denseClasses());
+        assertEquals(1, confusion.counts.get(199, 3));
+        assertEquals(1, confusion.counts.get(3, 3));
+
+        // a few hundred classes stay dense
+        confusion.increment(3, 699);
+        assertEquals(700, confusion.counts.denseClasses());
+
+        confusion.increment(ConfusionCounts.MAX_DENSE_CLASSES, 3);
+        assertEquals(0, confusion.counts.denseClasses());
+        assertEquals(1, confusion.counts.get(199, 3));
+        assertEquals(1, confusion.counts.get(3, 699));
+        assertEquals(4, confusion.counts.total());
+    }
+
+    @Test
+    public void testConcurrentCountsMerge() {
+        SortedSet<Object> labels = new TreeSet<>(Arrays.asList(0, 1, 2));
+        StandardConfusionMatrix serial = new StandardConfusionMatrix(labels);
+        ConcurrentConfusionMatrix concurrent = new ConcurrentConfusionMatrix(serial);
+        for (int i = 0; i < 100_000; i++) {
+            serial.increment(i % 3, (i / 7) % 3);
+        }
+        IntStream.range(0, 100_000).parallel().forEach(i -> concurrent.increment(i % 3, (i / 7) % 3));
+
+        AbstractConfusionMatrix merged = serial.emptyCopy().merge(concurrent);
+        for (int predicted = 0; predicted < 3; predicted++) {
+            for (int actual = 0; actual < 3; actual++) {
+                assertEquals(serial.counts.get(predicted, actual), merged.counts.get(predicted, actual));
+            }
+        }
+        assertEquals(serial.accuracy(), concurrent.accuracy(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeIntoItself() {
+        StandardConfusionMatrix confusion = new StandardConfusionMatrix(new TreeSet<>(Arrays.asList(0, 1)));
+        confusion.increment(0, 1);
+        confusion.merge(confusion);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrentMergeIntoItself() {
+        ConcurrentConfusionMatrix confusion =
+                new ConcurrentConfusionMatrix(new StandardConfusionMatrix(new TreeSet<>(Arrays.asList(0, 1))));
+        confusion.increment(0, 1);
+        confusion.merge(confusion);
+    }
+
+    @Test
+    public void testMetrics() {
+        StandardConfusionMatrix confusion = new StandardConfusionMatrix(new TreeSet<>(Arrays.asList(0, 1)));
+        confusion.counts.add(1, 1, 5);
+        confusion.counts.add(1, 0, 2);
+        confusion.counts.add(0, 1, 1);
+        confusion.counts.add(0, 0, 2);
+
+        Table metrics = confusion.metrics();
+        assertEquals(4, metrics.rowCount());
+        assertEquals(2 / 3.0, metrics.nCol("Precision").get(0), 1e-12);
+        assertEquals(0.5, metrics.nCol("Recall").get(0), 1e-12);
+        assertEquals(5 / 7.0, metrics.nCol("Precision").get(1), 1e-12);
+        assertEquals(5 / 6.0, metrics.nCol("Recall").get(1), 1e-12);
+        assertEquals(10 / 13.0, metrics.nCol("F1").get(1), 1e-12);
+        assertEquals(6, metrics.nCol("Support").get(1), 0.0);
+        assertEquals((2 / 3.0 + 5 / 7.0) / 2, metrics.nCol("Precision").get(2), 1e-12);
+        assertEquals(0.7, metrics.nCol("F1").get(3), 1e-12);
+
+        Table summary = confusion.summaryMetrics();
+        assertEquals(0.7, summary.nCol("Value").get(1), 1e-12);
+        assertEquals(0.16 / 0.46, summary.nCol("Value").get(2), 1e-12);
+        assertEquals(8 / Math.sqrt(504), summary.nCol("Value").get(3), 1e-12);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.classification;
+
+import org.junit.Test;
+import tech.tablesaw.api.Table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ThresholdCurvesTest {
+
+    private final double[] scores = {0.9, 0.8, 0.7, 0.6, 0.55, 0.4, 0.3, 0.2};
+    private final boolean[] positive = {true, true, false, true, false, true, false, false};
+
+    @Test
+    public void testExactCurves() {
+        ThresholdCurves curves = ThresholdCurves.exact(scores, positive);
+        // of the 16 positive-negative pairs, the positive scores higher in 13
+        assertEquals(13 / 16.0, curves.rocAuc(), 1e-12);
+        assertEquals((1 + 1 + 3 / 4.0 + 4 / 6.0) / 4, curves.averagePrecision(), 1e-12);
+        assertEquals(9, curves.rocTable().rowCount());
+        assertEquals(1.0, curves.precisionRecallTable().nCol("Recall").get(8), 0.0);
+    }
+
+    @Test
+    public void testExactCurvesWithInfiniteScores() {
+        double[] infinite = {Double.POSITIVE_INFINITY, 0.8, Double.NaN, 0.5, Double.NEGATIVE_INFINITY};
+        boolean[] labels = {true, false, true, true, false};
+        ThresholdCurves curves = ThresholdCurves.exact(infinite, labels);
+        assertEquals(5, curves.size());
+        Table roc = curves.rocTable();
+        // nothing is predicted positive at the first point, and the +Infinity score is the first one counted
+        assertEquals(0.0, roc.nCol("True Positive Rate").get(0), 0.0);
+        assertEquals(0.5, roc.nCol("True Positive Rate").get(1), 0.0);
+        assertEquals(0.0, roc.nCol("False Positive Rate").get(1), 0.0);
+        // of the 4 positive-negative pairs, the positive scores higher in 3
+        assertEquals(3 / 4.0, curves.rocAuc(), 1e-12);
+        assertEquals((1 + 2 / 3.0) / 2, curves.averagePrecision(), 1e-12);
+    }
+
+    @Test
+    public void testHistogramMatchesExactWhenBinsSeparateScores() {
+        ScoreHistogram first = new ScoreHistogram(100);
+        ScoreHistogram second = first.emptyCopy();
+        for (int i = 0; i < scores.length; i++) {
+            (i % 2 == 0 ? first : second).add(scores[i], positive[i]);
+        }
+        ThresholdCurves binned = first.merge(second).curves();
+        ThresholdCurves exact = ThresholdCurves.exact(scores, positive);
+        assertEquals(exact.rocAuc(), binned.rocAuc(), 1e-12);
+        assertEquals(exact.averagePrecision(), binned.averagePrecision(), 1e-12);
+    }
+
+    @Test
+    public void testLogisticRegressionCurves() throws Exception {
+        Table example = Table.read().csv("data/KNN_Example_1.csv");
+        LogisticRegression model =
+                LogisticRegression.learn(example.nCol("Label"), example.nCol("X"), example.nCol("Y"));
+        ThresholdCurves curves =
+                model.thresholdCurves(example.nCol("Label"), 1, example.nCol("X"), example.nCol("Y"));
+        assertTrue(curves.rocAuc() > 0.9);
+        assertTrue(curves.averagePrecision() > 0.9);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.Random;
+
+/**
+ * Gaussian blobs of points in the plane, for the clustering tests
+ */
+final class Blobs {
+
+    /**
+     * The centers of 4 well separated blobs at the corners of a square
+     */
+    static final double[][] SQUARE = {{0, 0}, {10, 0}, {0, 10}, {10, 10}};
+
+    private Blobs() {
+    }
+
+    /**
+     * Returns the x and y columns of n points, the i-th drawn from a standard gaussian around the center
+     * {@code i % centers.length}, so the blobs are of equal size
+     */
+    static NumberColumn[] of(double[][] centers, int n, Random random) {
+        NumberColumn x = DoubleColumn.create("x");
+        NumberColumn y = DoubleColumn.create("y");
+        for (int i = 0; i < n; i++) {
+            double[] center = centers[i % centers.length];
+            x.append(center[0] + random.nextGaussian());
+            y.append(center[1] + random.nextGaussian());
+        }
+        return new NumberColumn[]{x, y};
+    }
+}
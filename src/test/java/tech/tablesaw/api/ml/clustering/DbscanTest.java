@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import org.junit.Test;
+import smile.clustering.DBScan;
+import smile.math.distance.EuclideanDistance;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.util.DoubleArrays;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class DbscanTest {
+
+    /**
+     * Returns 4 gaussian blobs of 500 points each in the first two columns, and noise in the others, with 100
+     * points scattered uniformly over the whole area
+     */
+    private static NumberColumn[] blobs(int dimensions) {
+        Random random = new Random(11);
+        NumberColumn[] blobs = Blobs.of(Blobs.SQUARE, 2000, random);
+        NumberColumn[] columns = Arrays.copyOf(blobs, dimensions);
+        for (int k = 2; k < dimensions; k++) {
+            columns[k] = DoubleColumn.create("x" + k);
+            for (int i = 0; i < 2000; i++) {
+                columns[k].append(random.nextGaussian() * 0.1);
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            for (NumberColumn column : columns) {
+                column.append(random.nextDouble() * 14 - 2);
+            }
+        }
+        return columns;
+    }
+
+    @Test
+    public void testGridMatchesSmile() {
+        assertMatchesSmile(blobs(2), 8, 0.5);
+    }
+
+    @Test
+    public void testKdTreeMatchesSmile() {
+        assertMatchesSmile(blobs(GridIndex.MAX_DIMENSIONS + 1), 8, 0.6);
+    }
+
+    /**
+     * Asserts that the clusters of the core points and the outliers are those smile finds. Border points within
+     * the radius of two clusters may join either.
+     */
+    private static void assertMatchesSmile(NumberColumn[] columns, int minPts, double radius) {
+        Dbscan model = new Dbscan(minPts, radius, columns);
+        double[][] data = DoubleArrays.to2dArray(columns);
+        DBScan<double[]> expected = new DBScan<>(data, new EuclideanDistance(), minPts, radius);
+        int[] labels = model.getClusterLabels();
+        int[] expectedLabels = expected.getClusterLabel();
+
+        assertEquals(expected.getNumClusters(), model.getClusterCount());
+        assertEquals(expected.getClusterSize()[expected.getNumClusters()],
+                model.getClusterSizes()[model.getClusterCount()]);
+        boolean[] core = new boolean[data.length];
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expectedLabels[i] == Dbscan.OUTLIER, labels[i] == Dbscan.OUTLIER);
+            double[] x = data[i];
+            core[i] = IntStream.range(0, data.length)
+                    .filter(j -> DistanceKernel.squaredDistance(x, data[j]) <= radius * radius)
+                    .count() - 1 >= minPts;
+        }
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < i; j++) {
+                if (core[i] && core[j]) {
+                    assertEquals(expectedLabels[i] == expectedLabels[j], labels[i] == labels[j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAssign() {
+        NumberColumn[] columns = blobs(2);
+        Dbscan model = new Dbscan(8, 0.5, columns);
+        assertEquals(4, model.getClusterCount());
+        NumberColumn assigned = model.assign(columns);
+        int[] labels = model.getClusterLabels();
+        for (int i = 0; i < labels.length; i++) {
+            assertEquals(labels[i], (int) assigned.get(i));
+        }
+        assertEquals(Dbscan.OUTLIER, model.predict(new double[]{100, 100}));
+    }
+}
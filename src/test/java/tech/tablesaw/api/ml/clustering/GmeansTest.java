@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import org.junit.Before;
+import org.junit.Test;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GmeansTest {
+
+    private NumberColumn x;
+    private NumberColumn y;
+
+    @Before
+    public void setUp() {
+        // 4 well separated gaussian blobs of 2500 points each
+        NumberColumn[] blobs = Blobs.of(Blobs.SQUARE, 10_000, new Random(7));
+        x = blobs[0];
+        y = blobs[1];
+    }
+
+    @Test
+    public void testFindsTheBlobs() {
+        Gmeans model = new Gmeans(10, 3L, x, y);
+        assertEquals(4, model.getClusterCount());
+        for (int size : model.getClusterSizes()) {
+            assertEquals(2500, size);
+        }
+    }
+
+    @Test
+    public void testAssign() {
+        Gmeans model = new Gmeans(10, 3L, x, y);
+        DoubleColumn clusters = model.assign(x, y);
+        assertEquals(x.size(), clusters.size());
+        int[] labels = model.getClusterLabels();
+        for (int i = 0; i < labels.length; i++) {
+            assertEquals(labels[i], clusters.get(i), 0);
+            assertEquals(model.predict(new double[]{x.get(i), y.get(i)}), clusters.get(i), 0);
+        }
+    }
+}
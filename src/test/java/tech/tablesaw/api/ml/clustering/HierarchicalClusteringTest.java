@@ -0,0 +1,381 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HierarchicalClusteringTest {
+
+    private static final LinkageFactory.type[] GENERIC = {
+            LinkageFactory.type.COMPLETE, LinkageFactory.type.SINGLE, LinkageFactory.type.UPGMA,
+            LinkageFactory.type.UPGMC, LinkageFactory.type.WARD, LinkageFactory.type.WPGMA, LinkageFactory.type.WPGMC
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NumberColumn x;
+    private NumberColumn y;
+    private NumberColumn z;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(3);
+        x = DoubleColumn.create("x");
+        y = DoubleColumn.create("y");
+        z = DoubleColumn.create("z");
+        for (int i = 0; i < 80; i++) {
+            x.append(random.nextDouble() * 10);
+            y.append(random.nextDouble() * 10);
+            z.append(random.nextDouble() * 10);
+        }
+    }
+
+    @Test
+    public void testCondensedMatrix() {
+        Proximity proximity = new Proximity(x, y, z);
+        double[][] matrix = proximity.getMatrix();
+        assertEquals(80, proximity.size());
+        for (int i = 0; i < 80; i++) {
+            assertEquals(0, proximity.get(i, i), 0);
+            for (int j = 0; j < i; j++) {
+                double expected = smile.math.Math.distance(
+                        new double[]{x.get(i), y.get(i), z.get(i)},
+                        new double[]{x.get(j), y.get(j), z.get(j)});
+                assertEquals(expected, matrix[i][j], 1e-12);
+                assertEquals(expected, proximity.get(i, j), 1e-12);
+                assertEquals(expected, proximity.get(j, i), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testTiledMatrixMatchesExact() {
+        // enough rows for several tiles, far from the origin, with some duplicates
+        NumberColumn a = DoubleColumn.create("a");
+        NumberColumn b = DoubleColumn.create("b");
+        for (int i = 0; i < 700; i++) {
+            Random random = new Random(i % 10 == 9 ? i - 1 : i);
+            a.append(1e4 + random.nextDouble());
+            b.append(-1e4 + random.nextDouble());
+        }
+        Proximity tiled = new Proximity(Proximity.Precision.DOUBLE, a, b);
+        Proximity exact = new Proximity(Proximity.Precision.DOUBLE, true, a, b);
+        for (int i = 0; i < 700; i++) {
+            for (int j = 0; j < i; j++) {
+                assertEquals(exact.get(i, j), tiled.get(i, j), 1e-9);
+            }
+        }
+        assertEquals(0, tiled.get(9, 8), 0);
+    }
+
+    @Test
+    public void testMetrics() {
+        Proximity manhattan = new Proximity(Proximity.Metric.MANHATTAN, Proximity.Precision.DOUBLE, x, y, z);
+        Proximity chebyshev = new Proximity(Proximity.Metric.CHEBYSHEV, Proximity.Precision.DOUBLE, x, y, z);
+        Proximity cosine = new Proximity(Proximity.Metric.COSINE, Proximity.Precision.DOUBLE, x, y, z);
+        Proximity correlation = new Proximity(Proximity.Metric.CORRELATION, Proximity.Precision.DOUBLE, x, y, z);
+        for (int i = 0; i < 80; i++) {
+            double[] a = {x.get(i), y.get(i), z.get(i)};
+            for (int j = 0; j < i; j++) {
+                double[] b = {x.get(j), y.get(j), z.get(j)};
+                double sum = 0;
+                double max = 0;
+                for (int k = 0; k < 3; k++) {
+                    sum += Math.abs(a[k] - b[k]);
+                    max = Math.max(max, Math.abs(a[k] - b[k]));
+                }
+                assertEquals(sum, manhattan.get(i, j), 1e-12);
+                assertEquals(max, chebyshev.get(i, j), 1e-12);
+                assertEquals(1 - smile.math.Math.dot(a, b) / (smile.math.Math.norm(a) * smile.math.Math.norm(b)),
+                        cosine.get(i, j), 1e-12);
+                assertEquals(1 - smile.math.Math.cor(a, b), correlation.get(i, j), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testExactMetricsMatchFastOnes() {
+        // a row of zeros and two nearly parallel rows, far apart, among the others
+        NumberColumn a = DoubleColumn.create("a", new double[]{0, 1e4, 1e4 + 1e-3, 3, -2});
+        NumberColumn b = DoubleColumn.create("b", new double[]{0, 1e4, 1e4, -1, 5});
+        NumberColumn c = DoubleColumn.create("c", new double[]{0, 1e4, 1e4, 7, 1});
+        for (Proximity.Metric metric : new Proximity.Metric[]{Proximity.Metric.COSINE,
+                Proximity.Metric.CORRELATION, Proximity.Metric.MANHATTAN, Proximity.Metric.CHEBYSHEV}) {
+            Proximity fast = new Proximity(metric, Proximity.Precision.DOUBLE, a, b, c);
+            Proximity exact = new Proximity(metric, Proximity.Precision.DOUBLE, true, a, b, c);
+            for (int i = 0; i < 5; i++) {
+                for (int j = 0; j < i; j++) {
+                    assertEquals(metric.name(), fast.get(i, j), exact.get(i, j), 1e-9);
+                }
+            }
+        }
+        Proximity cosine = new Proximity(Proximity.Metric.COSINE, Proximity.Precision.DOUBLE, true, a, b, c);
+        assertEquals(1, cosine.get(1, 0), 0);
+        // the angle between the parallel rows is about 1e-7 / sqrt(3) radians, which 1 - a.b loses to rounding
+        assertEquals(1e-14 / 3 * (2.0 / 3) / 2, cosine.get(2, 1), 1e-18);
+    }
+
+    @Test
+    public void testMahalanobisIsScaleInvariant() {
+        NumberColumn scaled = DoubleColumn.create("scaled");
+        for (int i = 0; i < 80; i++) {
+            scaled.append(100 * y.get(i) + x.get(i));
+        }
+        Proximity original = new Proximity(Proximity.Metric.MAHALANOBIS, Proximity.Precision.DOUBLE, x, y, z);
+        Proximity transformed = new Proximity(Proximity.Metric.MAHALANOBIS, Proximity.Precision.DOUBLE,
+                x, scaled, z);
+        for (int i = 0; i < 80; i++) {
+            for (int j = 0; j < i; j++) {
+                assertEquals(original.get(i, j), transformed.get(i, j), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesSmileLinkages() {
+        for (LinkageFactory.type type : GENERIC) {
+            for (Proximity.Precision precision : Proximity.Precision.values()) {
+                HierarchicalClustering model = new HierarchicalClustering(type, precision, x, y, z);
+                smile.clustering.HierarchicalClustering expected = new smile.clustering.HierarchicalClustering(
+                        new LinkageFactory().createLinkage(new Proximity(x, y, z).getMatrix(), type));
+                assertArrayEquals(type.name(), expected.getHeight(), model.getHeight(), 1e-4);
+                for (int k = 2; k < 10; k++) {
+                    assertArrayEquals(type.name(), expected.partition(k), model.partition(k));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFastAlgorithmsMatchGeneric() {
+        LinkageFactory.type[] fast = {
+                LinkageFactory.type.SINGLE_SLINK, LinkageFactory.type.COMPLETE_NN_CHAIN,
+                LinkageFactory.type.UPGMA_NN_CHAIN, LinkageFactory.type.WARD_NN_CHAIN
+        };
+        for (LinkageFactory.type type : fast) {
+            LinkageFactory.type generic = LinkageFactory.linkage(type);
+            HierarchicalClustering expected = new HierarchicalClustering(generic, x, y, z);
+            HierarchicalClustering model = new HierarchicalClustering(type, x, y, z);
+            HierarchicalClustering fromMatrix = new HierarchicalClustering(type, new Proximity(x, y, z));
+            assertArrayEquals(type.name(), expected.getHeight(), model.getHeight(), 1e-4);
+            assertArrayEquals(type.name(), expected.getHeight(), fromMatrix.getHeight(), 1e-4);
+            for (int k = 2; k < 10; k++) {
+                assertSamePartition(type.name(), expected.partition(k), model.partition(k));
+                assertSamePartition(type.name(), expected.partition(k), fromMatrix.partition(k));
+            }
+        }
+    }
+
+    @Test
+    public void testPartitions() {
+        for (LinkageFactory.type type : new LinkageFactory.type[]{
+                LinkageFactory.type.WARD, LinkageFactory.type.SINGLE_SLINK, LinkageFactory.type.UPGMA_NN_CHAIN}) {
+            HierarchicalClustering model = new HierarchicalClustering(type, x, y, z);
+            Table partitions = model.partitions(2, 80);
+            assertEquals(79, partitions.columnCount());
+            for (int k = 2; k <= 80; k++) {
+                int[] partition = model.partition(k);
+                // smile's heap selection returns fewer than k clusters for some k
+                assertEquals(type.name(), k, IntStream.of(partition).distinct().count());
+                assertArrayEquals(type.name(), partition, labels(partitions.numberColumn("k=" + k)));
+            }
+
+            double[] height = model.getHeight();
+            double[] heights = {height[77], height[70], height[40], height[5]};
+            partitions = model.partitionsAtHeights(heights);
+            for (int cut = 0; cut < heights.length; cut++) {
+                assertArrayEquals(type.name(), model.partition(heights[cut]), labels(partitions.numberColumn(cut)));
+            }
+        }
+    }
+
+    private static int[] labels(NumberColumn column) {
+        int[] labels = new int[column.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (int) column.get(i);
+        }
+        return labels;
+    }
+
+    @Test
+    public void testApproximateFindsTheBlobs() {
+        // 4 well separated gaussian blobs of 5000 points each
+        NumberColumn[] columns = Blobs.of(Blobs.SQUARE, 20_000, new Random(5));
+        int[] blobs = IntStream.range(0, 20_000).map(i -> i % Blobs.SQUARE.length).toArray();
+        for (LinkageFactory.type type : new LinkageFactory.type[]{LinkageFactory.type.WARD,
+                LinkageFactory.type.UPGMA, LinkageFactory.type.UPGMC, LinkageFactory.type.COMPLETE_NN_CHAIN}) {
+            HierarchicalClustering model = HierarchicalClustering.approximate(type, 500, 13L, columns);
+            // the tree is of the non-empty micro-clusters
+            assertTrue(type.name(), model.getHeight().length <= 499);
+            int[] partition = model.partition(4);
+            assertEquals(20_000, partition.length);
+            // each blob falls in a cluster of its own, but for a few points in the tails
+            int[][] counts = new int[4][4];
+            for (int i = 0; i < blobs.length; i++) {
+                counts[blobs[i]][partition[i]]++;
+            }
+            for (int blob = 0; blob < 4; blob++) {
+                int largest = IntStream.of(counts[blob]).max().getAsInt();
+                assertTrue(type.name(), largest > 4900);
+                for (int other = 0; other < blob; other++) {
+                    assertTrue(type.name(), indexOfMax(counts[blob]) != indexOfMax(counts[other]));
+                }
+            }
+        }
+    }
+
+    private static int indexOfMax(int[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testChainScansBlocksInParallel() {
+        // more clusters than one block of the nearest-neighbor scan
+        Random random = new Random(23);
+        NumberColumn a = DoubleColumn.create("a");
+        NumberColumn b = DoubleColumn.create("b");
+        for (int i = 0; i < ParallelKmeans.BLOCK_SIZE + 500; i++) {
+            a.append(random.nextGaussian());
+            b.append(random.nextGaussian());
+        }
+        HierarchicalClustering expected = new HierarchicalClustering(LinkageFactory.type.WARD, a, b);
+        HierarchicalClustering chain = new HierarchicalClustering(LinkageFactory.type.WARD_NN_CHAIN, a, b);
+        assertArrayEquals(expected.getHeight(), chain.getHeight(), 1e-4);
+        assertSamePartition("WARD_NN_CHAIN", expected.partition(10), chain.partition(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWardNeedsEuclideanDistances() {
+        new HierarchicalClustering(LinkageFactory.type.WARD_NN_CHAIN, Proximity.Metric.MANHATTAN,
+                Proximity.Precision.DOUBLE, x, y, z);
+    }
+
+    @Test
+    public void testCentroidLinkagesNeedEuclideanDistances() {
+        for (LinkageFactory.type type : new LinkageFactory.type[]{LinkageFactory.type.WARD,
+                LinkageFactory.type.UPGMC, LinkageFactory.type.WPGMC}) {
+            try {
+                new HierarchicalClustering(type, Proximity.Metric.MANHATTAN, Proximity.Precision.DOUBLE, x, y, z);
+                fail(type.name());
+            } catch (IllegalArgumentException expected) {
+                // the matrix isn't computed
+            }
+        }
+        // the other linkages take any metric
+        new HierarchicalClustering(LinkageFactory.type.UPGMA, Proximity.Metric.MANHATTAN,
+                Proximity.Precision.DOUBLE, x, y, z);
+    }
+
+    /**
+     * Asserts that two partitions group the observations alike, whatever their labels
+     */
+    private static void assertSamePartition(String message, int[] expected, int[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < i; j++) {
+                assertEquals(message, expected[i] == expected[j], actual[i] == actual[j]);
+            }
+        }
+    }
+
+    @Test
+    public void testMappedMatrixIsReusableAcrossLinkages() throws Exception {
+        Path file = folder.newFile("proximity.bin").toPath();
+        Proximity.write(file, Proximity.Precision.FLOAT, x, y, z).close();
+        Proximity onHeap = new Proximity(Proximity.Precision.FLOAT, x, y, z);
+
+        try (Proximity mapped = Proximity.open(file)) {
+            assertEquals(80, mapped.size());
+            for (LinkageFactory.type type : GENERIC) {
+                try (Proximity copy = mapped.copy(folder.newFile(type + ".bin").toPath())) {
+                    HierarchicalClustering fromFile = new HierarchicalClustering(type, copy);
+                    HierarchicalClustering expected =
+                            new HierarchicalClustering(type, Proximity.Precision.FLOAT, x, y, z);
+                    assertArrayEquals(type.name(), expected.getHeight(), fromFile.getHeight(), 0);
+                }
+            }
+        }
+        // clustering the copies left the original untouched
+        try (Proximity reopened = Proximity.open(file)) {
+            assertSameEntries(onHeap, reopened);
+        }
+    }
+
+    @Test
+    public void testCopiesMatchTheMatrix() throws Exception {
+        for (Proximity.Precision precision : Proximity.Precision.values()) {
+            Proximity onHeap = new Proximity(precision, x, y, z);
+            try (Proximity heapCopy = onHeap.copy(folder.newFile(precision + "-heap.bin").toPath());
+                 Proximity fileCopy = heapCopy.copy(folder.newFile(precision + "-file.bin").toPath())) {
+                assertSameEntries(onHeap, heapCopy);
+                assertSameEntries(onHeap, fileCopy);
+            }
+        }
+    }
+
+    @Test
+    public void testAnOpenFileIsNotOverwritten() throws Exception {
+        Path file = folder.newFile("open.bin").toPath();
+        Proximity mapped = Proximity.write(file, Proximity.Precision.DOUBLE, x, y, z);
+        try {
+            Proximity.write(file, Proximity.Precision.DOUBLE, x, y);
+            fail("An open file was overwritten");
+        } catch (IOException expected) {
+            // the mapped matrix still reads its entries
+            assertEquals(new Proximity(x, y, z).get(5, 3), mapped.get(5, 3), 0);
+        }
+        try {
+            mapped.copy(file);
+            fail("A matrix was copied onto its own file");
+        } catch (IOException expected) {
+            // refused before anything was written
+        }
+        mapped.close();
+        try (Proximity rewritten = Proximity.write(file, Proximity.Precision.DOUBLE, x, y)) {
+            assertSameEntries(new Proximity(x, y), rewritten);
+        }
+    }
+
+    private static void assertSameEntries(Proximity expected, Proximity actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), 0);
+            }
+        }
+    }
+}
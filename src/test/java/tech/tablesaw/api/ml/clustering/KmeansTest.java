@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import org.junit.Before;
+import org.junit.Test;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.util.DoubleArrays;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KmeansTest {
+
+    private NumberColumn x;
+    private NumberColumn y;
+
+    @Before
+    public void setUp() {
+        // 4 well separated gaussian blobs of 2500 points each
+        NumberColumn[] blobs = Blobs.of(Blobs.SQUARE, 10_000, new Random(7));
+        x = blobs[0];
+        y = blobs[1];
+    }
+
+    private void assertFindsBlobs(Kmeans kmeans) {
+        assertEquals(4, kmeans.getClusterCount());
+        int[] labels = kmeans.getClusterLabels();
+        for (int i = 0; i < labels.length; i++) {
+            // every point of a blob is in the cluster of the blob's first point
+            assertEquals(labels[i % Blobs.SQUARE.length], labels[i]);
+        }
+        for (int size : kmeans.getClusterSizes()) {
+            assertEquals(2500, size);
+        }
+        // each point contributes about 2, the expected squared distance from its center
+        assertEquals(20_000, kmeans.distortion(), 1_000);
+    }
+
+    @Test
+    public void testLloyd() {
+        assertFindsBlobs(new Kmeans(4, 100, Kmeans.Algorithm.LLOYD, 1, 3L, x, y));
+    }
+
+    @Test
+    public void testMiniBatch() {
+        assertFindsBlobs(Kmeans.miniBatch(4, 500, 200, 3L, x, y));
+    }
+
+    @Test
+    public void testHamerly() {
+        assertFindsBlobs(new Kmeans(4, 100, Kmeans.Algorithm.HAMERLY, 1, 3L, x, y));
+    }
+
+    @Test
+    public void testRestartsKeepTheBestRun() {
+        assertFindsBlobs(new Kmeans(4, 100, Kmeans.Algorithm.LLOYD, 8, 3L, x, y));
+
+        // with more clusters than blobs the runs end in different local minima; run i matches a single run from
+        // seed + i, and the kept run is the first with the lowest distortion
+        Kmeans restarted = new Kmeans(20, 100, Kmeans.Algorithm.LLOYD, 8, 3L, x, y);
+        Kmeans best = null;
+        for (int run = 0; run < 8; run++) {
+            Kmeans single = new Kmeans(20, 100, Kmeans.Algorithm.LLOYD, 1, 3L + run, x, y);
+            if (best == null || single.distortion() < best.distortion()) {
+                best = single;
+            }
+        }
+        assertEquals(best.distortion(), restarted.distortion(), 0.0);
+        assertArrayEquals(best.getClusterLabels(), restarted.getClusterLabels());
+    }
+
+    @Test
+    public void testTheSameSeedGivesTheSameModel() {
+        Kmeans first = new Kmeans(20, 100, Kmeans.Algorithm.HAMERLY, 4, 5L, x, y);
+        Kmeans second = new Kmeans(20, 100, Kmeans.Algorithm.HAMERLY, 4, 5L, x, y);
+        assertArrayEquals(first.getClusterLabels(), second.getClusterLabels());
+        assertEquals(first.distortion(), second.distortion(), 0.0);
+
+        Kmeans miniBatch = Kmeans.miniBatch(20, 500, 200, 5L, x, y);
+        assertArrayEquals(miniBatch.getClusterLabels(), Kmeans.miniBatch(20, 500, 200, 5L, x, y).getClusterLabels());
+    }
+
+    @Test
+    public void testHamerlyMatchesLloydFromTheSameSeeds() {
+        double[][] data = DoubleArrays.to2dArray(x, y);
+        double[][] seeds = ParallelKmeans.seed(data, 20, 11L);
+        KmeansModel lloyd = ParallelKmeans.lloyd(data, seeds, 100);
+        KmeansModel hamerly = HamerlyKmeans.fit(data, seeds, 100);
+        assertArrayEquals(lloyd.labels, hamerly.labels);
+        assertEquals(lloyd.distortion, hamerly.distortion, 1e-6);
+    }
+
+    @Test
+    public void testUpdate() {
+        Kmeans kmeans = new Kmeans(4, 100, Kmeans.Algorithm.LLOYD, 1, 3L, x, y);
+        int[] before = kmeans.getClusterLabels().clone();
+        int[] sizesBefore = kmeans.getClusterSizes();
+        double[][] centroidsBefore = kmeans.centroids();
+        double[][] centroidsCopy = ParallelKmeans.copy(centroidsBefore);
+
+        // more points from the same blobs are assigned without reclustering
+        Random random = new Random(8);
+        NumberColumn[] more = Blobs.of(Blobs.SQUARE, 400, random);
+        assertFalse(kmeans.update(more));
+        int[] labels = kmeans.getClusterLabels();
+        assertEquals(10_400, labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            assertEquals(before[i % Blobs.SQUARE.length], labels[i]);
+        }
+        for (int size : kmeans.getClusterSizes()) {
+            assertEquals(2600, size);
+        }
+        for (int size : sizesBefore) {
+            assertEquals(2500, size);
+        }
+        for (int c = 0; c < centroidsCopy.length; c++) {
+            assertArrayEquals(centroidsCopy[c], centroidsBefore[c], 0.0);
+        }
+
+        // points far from every cluster drift the distortion enough to recluster
+        NumberColumn farX = DoubleColumn.create("x");
+        NumberColumn farY = DoubleColumn.create("y");
+        for (int i = 0; i < 1000; i++) {
+            farX.append(40 + random.nextGaussian());
+            farY.append(40 + random.nextGaussian());
+        }
+        assertTrue(kmeans.update(farX, farY));
+        assertEquals(11_400, kmeans.getClusterLabels().length);
+        assertEquals(11_400, IntStream.of(kmeans.getClusterSizes()).sum());
+    }
+
+    @Test
+    public void testAssign() {
+        Kmeans kmeans = new Kmeans(4, 100, Kmeans.Algorithm.LLOYD, 1, 3L, x, y);
+        DoubleColumn clusters = kmeans.assign(x, y);
+        assertEquals(x.size(), clusters.size());
+        int[] labels = kmeans.getClusterLabels();
+        for (int i = 0; i < labels.length; i++) {
+            assertEquals(labels[i], clusters.get(i), 0);
+            assertEquals(kmeans.predict(new double[]{x.get(i), y.get(i)}), clusters.get(i), 0);
+        }
+    }
+}
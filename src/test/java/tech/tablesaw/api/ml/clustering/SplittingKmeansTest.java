@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.clustering;
+
+import org.junit.Before;
+import org.junit.Test;
+import tech.tablesaw.util.DoubleArrays;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The search shared by {@link Gmeans} and {@link Xmeans}, with split tests that don't depend on the statistics
+ */
+public class SplittingKmeansTest {
+
+    private static final SplittingKmeans.SplitTest ALWAYS = (rows, centroid, split) -> rows.length;
+    private static final SplittingKmeans.SplitTest NEVER = (rows, centroid, split) -> -1;
+
+    private double[][] data;
+
+    @Before
+    public void setUp() {
+        data = DoubleArrays.to2dArray(Blobs.of(Blobs.SQUARE, 10_000, new Random(7)));
+    }
+
+    @Test
+    public void testSplitsUpToMaxK() {
+        KmeansModel model = SplittingKmeans.fit(data, 7, ALWAYS, ForkJoinPool.commonPool(), Long.MAX_VALUE, 3L);
+        assertEquals(7, model.centroids.length);
+        assertEquals(10_000, IntStream.of(model.sizes).sum());
+    }
+
+    @Test
+    public void testStopsWhenNoClusterShouldSplit() {
+        KmeansModel model = SplittingKmeans.fit(data, 10, NEVER, ForkJoinPool.commonPool(), Long.MAX_VALUE, 3L);
+        assertEquals(1, model.centroids.length);
+    }
+
+    @Test
+    public void testStopsWhenTheTimeLimitIsReached() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            KmeansModel model = SplittingKmeans.fit(data, 10, ALWAYS, pool, 0, 3L);
+            assertEquals(1, model.centroids.length);
+            assertEquals(10_000, model.labels.length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTheSameSeedGivesTheSameClusters() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            KmeansModel first = SplittingKmeans.fit(data, 20, ALWAYS, pool, Long.MAX_VALUE, 5L);
+            // the pool can be reused, and the result doesn't depend on the pool
+            KmeansModel second = SplittingKmeans.fit(data, 20, ALWAYS, pool, Long.MAX_VALUE, 5L);
+            KmeansModel common = SplittingKmeans.fit(data, 20, ALWAYS, ForkJoinPool.commonPool(), Long.MAX_VALUE,
+                    5L);
+            assertArrayEquals(first.labels, second.labels);
+            assertArrayEquals(first.labels, common.labels);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
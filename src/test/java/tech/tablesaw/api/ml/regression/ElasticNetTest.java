@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import org.junit.Before;
+import org.junit.Test;
+import tech.tablesaw.api.Table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ElasticNetTest {
+
+    private Table baseball;
+
+    @Before
+    public void setUp() throws Exception {
+        baseball = Table.read().csv("data/baseball.csv");
+    }
+
+    @Test
+    public void testUnpenalizedFitMatchesOls() {
+        LeastSquares ols = LeastSquares.train(baseball.nCol("RS"), baseball.nCol("OBP"), baseball.nCol("SLG"));
+        ElasticNet ridge = ElasticNet.ridge(0.0, baseball.nCol("RS"), baseball.nCol("OBP"), baseball.nCol("SLG"));
+
+        // coordinate descent converges to within its tolerance, not to machine precision
+        assertArrayEquals(ols.coefficients(), ridge.coefficients(), 0.5);
+        assertEquals(ols.intercept(), ridge.intercept(), 0.5);
+    }
+
+    @Test
+    public void testPath() {
+        RegularizationPath path = ElasticNet.path(1.0, 20, baseball.nCol("RS"),
+                baseball.nCol("OBP"), baseball.nCol("SLG"), baseball.nCol("BA"));
+
+        assertEquals(20, path.size());
+        assertEquals(0, path.get(0).nonZeroCount());
+        assertEquals(3, path.get(19).nonZeroCount());
+        assertEquals(20, path.toTable().rowCount());
+    }
+}
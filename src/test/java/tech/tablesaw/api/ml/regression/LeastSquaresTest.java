@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import org.junit.Before;
+import org.junit.Test;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.NumberColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LeastSquaresTest {
+
+    private Table baseball;
+
+    @Before
+    public void setUp() throws Exception {
+        baseball = Table.read().csv("data/baseball.csv");
+    }
+
+    @Test
+    public void testBuilderMatchesOls() {
+        LeastSquares ols = LeastSquares.train(baseball.nCol("RS"),
+                baseball.nCol("OBP"), baseball.nCol("SLG"), baseball.nCol("BA"));
+
+        Table first = baseball.first(500);
+        Table rest = baseball.last(baseball.rowCount() - 500);
+
+        LeastSquares.Builder shard = LeastSquares.builder("OBP", "SLG", "BA")
+                .add(rest.nCol("RS"), rest.nCol("OBP"), rest.nCol("SLG"), rest.nCol("BA"));
+        LeastSquares streamed = LeastSquares.builder("OBP", "SLG", "BA")
+                .add(first.nCol("RS"), first.nCol("OBP"), first.nCol("SLG"), first.nCol("BA"))
+                .merge(shard)
+                .build();
+
+        assertArrayEquals(ols.coefficients(), streamed.coefficients(), 1e-6);
+        assertEquals(ols.intercept(), streamed.intercept(), 1e-6);
+        assertEquals(ols.RSS(), streamed.RSS(), 1e-4);
+        assertEquals(ols.RSquared(), streamed.RSquared(), 1e-9);
+        assertEquals(ols.adjustedRSquared(), streamed.adjustedRSquared(), 1e-9);
+        assertEquals(ols.ftest(), streamed.ftest(), 1e-4);
+        assertEquals(ols.df(), streamed.df(), 0.0);
+        for (int i = 0; i < ols.ttest().length; i++) {
+            assertArrayEquals(ols.ttest()[i], streamed.ttest()[i], 1e-4);
+        }
+    }
+
+    @Test
+    public void testBuilderMergesParallelBlocks() {
+        // more rows than NormalEquations.BLOCK_SIZE, so the rows are summed in blocks that are then merged
+        int rows = 3 * NormalEquations.BLOCK_SIZE + 123;
+        Random random = new Random(17);
+        DoubleColumn y = DoubleColumn.create("y");
+        DoubleColumn a = DoubleColumn.create("a");
+        DoubleColumn b = DoubleColumn.create("b");
+        for (int row = 0; row < rows; row++) {
+            double x1 = random.nextGaussian() + 5;
+            double x2 = random.nextDouble() * 10;
+            a.append(x1);
+            b.append(x2);
+            y.append(1 + 2 * x1 - 3 * x2 + random.nextGaussian());
+        }
+        LeastSquares ols = LeastSquares.train(y, a, b);
+        LeastSquares streamed = LeastSquares.builder("a", "b").add(y, a, b).build();
+
+        assertEquals(rows, LeastSquares.builder("a", "b").add(y, a, b).rowCount());
+        assertArrayEquals(ols.coefficients(), streamed.coefficients(), 1e-9);
+        assertEquals(ols.intercept(), streamed.intercept(), 1e-9);
+        assertEquals(ols.RSS(), streamed.RSS(), 1e-6);
+        assertEquals(ols.RSquared(), streamed.RSquared(), 1e-12);
+        for (int i = 0; i < ols.ttest().length; i++) {
+            assertArrayEquals(ols.ttest()[i], streamed.ttest()[i], 1e-6);
+        }
+    }
+
+    @Test
+    public void testSolversAgree() {
+        LeastSquares qr = LeastSquares.train(baseball.nCol("RS"),
+                baseball.nCol("OBP"), baseball.nCol("SLG"), baseball.nCol("BA"));
+        for (LeastSquares.Solver solver : LeastSquares.Solver.values()) {
+            LeastSquares model = LeastSquares.train(solver, baseball.nCol("RS"),
+                    baseball.nCol("OBP"), baseball.nCol("SLG"), baseball.nCol("BA"));
+            assertArrayEquals(qr.coefficients(), model.coefficients(), 1e-6);
+            assertEquals(qr.intercept(), model.intercept(), 1e-6);
+            assertEquals(qr.RSS(), model.RSS(), 1e-4);
+            assertEquals(qr.RSquared(), model.RSquared(), 1e-9);
+            for (int i = 0; i < qr.ttest().length; i++) {
+                assertArrayEquals(qr.ttest()[i], model.ttest()[i], 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testBootstrapIntervals() {
+        LeastSquares model = LeastSquares.train(baseball.nCol("RS"), baseball.nCol("OBP"), baseball.nCol("SLG"));
+        Table intervals = model.bootstrap(200, 0.95, 42L);
+
+        assertEquals(3, intervals.rowCount());
+        assertEquals("(Intercept)", intervals.stringColumn("Term").get(0));
+        for (int row = 0; row < intervals.rowCount(); row++) {
+            double estimate = intervals.nCol("Estimate").get(row);
+            assertTrue(intervals.nCol("Lower").get(row) < estimate);
+            assertTrue(intervals.nCol("Upper").get(row) > estimate);
+            // the bootstrap and t-test standard errors should be of the same size for well-behaved data
+            double se = model.ttest()[row == 0 ? 2 : row - 1][1];
+            assertEquals(se, intervals.nCol("Std. Error").get(row), se * 0.5);
+        }
+        assertEquals(intervals.nCol("Lower").get(1), model.bootstrap(200, 0.95, 42L).nCol("Lower").get(1), 0.0);
+    }
+
+    @Test
+    public void testBatchPrediction() {
+        LeastSquares model = LeastSquares.train(baseball.nCol("RS"), baseball.nCol("OBP"), baseball.nCol("SLG"));
+        NumberColumn predicted = model.predict(baseball.nCol("OBP"), baseball.nCol("SLG"));
+        double[] fitted = model.fitted();
+        double[] residuals = model.residuals();
+
+        assertEquals(baseball.rowCount(), predicted.size());
+        for (int row = 0; row < baseball.rowCount(); row++) {
+            double[] x = {baseball.nCol("OBP").get(row), baseball.nCol("SLG").get(row)};
+            assertEquals(model.predict(x), predicted.get(row), 1e-9);
+            assertEquals(model.predict(x), fitted[row], 1e-9);
+            assertEquals(baseball.nCol("RS").get(row) - fitted[row], residuals[row], 1e-9);
+        }
+    }
+
+    @Test
+    public void testEditingTheTrainingTableLeavesTheModelUnchanged() {
+        for (LeastSquares.Solver solver : LeastSquares.Solver.values()) {
+            Table copy = baseball.copy();
+            LeastSquares model = LeastSquares.train(solver, copy.nCol("RS"), copy.nCol("OBP"), copy.nCol("SLG"));
+            double[] residuals = model.residuals();
+            double[] actuals = model.actuals();
+            copy.nCol("RS").set(0, 1e6);
+            copy.nCol("OBP").set(0, 1e6);
+            assertArrayEquals(solver.name(), residuals, model.residuals(), 0);
+            assertArrayEquals(solver.name(), actuals, model.actuals(), 0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuiltModelHasNoResiduals() {
+        LeastSquares.builder("OBP")
+                .add(baseball.nCol("RS"), baseball.nCol("OBP"))
+                .build()
+                .residuals();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.tablesaw.api.ml.regression;
+
+import org.junit.Test;
+import tech.tablesaw.api.Table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RecursiveLeastSquaresTest {
+
+    @Test
+    public void testUpdatesMatchBatchFit() throws Exception {
+        Table baseball = Table.read().csv("data/baseball.csv");
+        Table first = baseball.first(400);
+        Table rest = baseball.last(baseball.rowCount() - 400);
+
+        RecursiveLeastSquares online = RecursiveLeastSquares.train(first.nCol("RS"), first.nCol("OBP"), first.nCol("SLG"));
+        online.update(rest.nCol("RS"), rest.nCol("OBP"), rest.nCol("SLG"));
+
+        LeastSquares batch = LeastSquares.train(baseball.nCol("RS"), baseball.nCol("OBP"), baseball.nCol("SLG"));
+
+        assertEquals(baseball.rowCount(), online.rowCount());
+        assertArrayEquals(batch.coefficients(), online.coefficients(), 1e-4);
+        assertEquals(batch.intercept(), online.intercept(), 1e-4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpdateRejectsRaggedColumns() throws Exception {
+        Table baseball = Table.read().csv("data/baseball.csv");
+        Table first = baseball.first(400);
+        RecursiveLeastSquares online = RecursiveLeastSquares.train(first.nCol("RS"), first.nCol("OBP"), first.nCol("SLG"));
+        online.update(baseball.last(20).nCol("RS"), baseball.last(20).nCol("OBP"), baseball.last(10).nCol("SLG"));
+    }
+}